@@ -2,9 +2,9 @@ package apps;
 
 import io.BitSink;
 import io.BitSource;
+import io.BufferedBitSink;
 import io.InputStreamBitSource;
 import io.InsufficientBitsLeftException;
-import io.OutputStreamBitSink;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -18,19 +18,21 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Function;
 import java.util.function.ToDoubleFunction;
 import java.util.function.ToIntFunction;
 import java.util.function.ToLongFunction;
 
-import models.Symbol;
-import models.SymbolModel;
-import models.Unsigned8BitModel;
-import models.Unsigned8BitModel.Unsigned8BitSymbol;
+import models.AdaptiveModel;
 import codec.ArithmeticDecoder;
 import codec.ArithmeticEncoder;
 import codec.SymbolDecoder;
 import codec.SymbolEncoder;
+import video.Frame;
+import video.TileDictionary;
+import video.YuvFrameReader;
 
 
 public class TileVideoApp extends VideoApp {
@@ -43,6 +45,13 @@ public class TileVideoApp extends VideoApp {
 	public static final int BUCKETS = 4;
 	public static final int DICTIONARY_SIZE = 128;
 	
+	/* Threads main uses to match tiles against the dictionary.
+	 * Defaults to all cores; set e.g. -Dtilevideo.parallelism=24 to
+	 * leave cores free for other work.
+	 */
+	public static final String PARALLELISM_PROPERTY = "tilevideo.parallelism";
+	private static final int ROWS_PER_TASK = 4;
+	
 	public static void main(String[] args) throws IOException, InsufficientBitsLeftException {
 		String base = "bunny";
 		String filename= base + ".450p.yuv";
@@ -51,89 +60,61 @@ public class TileVideoApp extends VideoApp {
 		int height = 450;
 
 
-		Unsigned8BitModel dictionaryModel = new Unsigned8BitModel();
-		Unsigned8BitModel residualModel = new Unsigned8BitModel();
-		
-		InputStream training_values = new FileInputStream(file);
+		// Both passes read whole frames by position, so the file is
+		// opened once for the dictionary and the coding pass.
+		YuvFrameReader video = new YuvFrameReader(file, WIDTH, HEIGHT);
 		
-		//training_values.close();	
-		int[] dictionary = generateTileDictonary(training_values, TILE_SIZE, BUCKETS, DICTIONARY_SIZE);
+		int[] dictionary = generateTileDictonary(video, TILE_SIZE, BUCKETS, DICTIONARY_SIZE);
+		TileDictionary tiles = new TileDictionary(dictionary, TILE_SIZE, BUCKETS);
 		
-		training_values = new FileInputStream(file);
-		
-		int[][] current_frame = new int[WIDTH][HEIGHT];
-		int[][][] video_dictionary_encoding = new int[NUM_FRAMES][(WIDTH-TILE_SIZE+1)/TILE_SIZE][(HEIGHT-TILE_SIZE+1)/TILE_SIZE];
-		for (int f=0; f < NUM_FRAMES; f++) {
-			current_frame = readFrame(training_values, WIDTH, HEIGHT);
-			 int[][] dictionaryFrame = encodeFrameWithDictonary(current_frame, TILE_SIZE, BUCKETS, dictionary);
-			 video_dictionary_encoding[f] = dictionaryFrame;
-			 trainModelWithFrame(dictionaryModel, dictionaryFrame);
-		}
-		
-		training_values = new FileInputStream(file);
-		for (int f=0; f < NUM_FRAMES; f++) {
-			current_frame = readFrame(training_values, WIDTH, HEIGHT);
-			int[][] residualFrame = residualsFromEncodedFrame(current_frame, video_dictionary_encoding[f], TILE_SIZE, BUCKETS, dictionary);
-			trainModelWithFrame(residualModel, residualFrame);
-		}
-		
-		SymbolEncoder dictionaryEncoder = new ArithmeticEncoder(dictionaryModel);
-		Symbol[] dictionarySymbols = new Unsigned8BitSymbol[256];
-		for (int v=0; v<256; v++) {
-			SymbolModel s = dictionaryModel.getByIndex(v);
-			Symbol sym = s.getSymbol();
-			dictionarySymbols[v] = sym;
+		// Both streams use adaptive models, so tile numbers and residuals
+		// are coded in the same pass that matches tiles to the dictionary.
+		SymbolEncoder dictionaryEncoder = new ArithmeticEncoder(new AdaptiveModel(DICTIONARY_SIZE));
+		SymbolEncoder residualEncoder = new ArithmeticEncoder(new AdaptiveModel(256));
 
-			long prob = s.getProbability(dictionaryModel.getCountTotal());
-			System.out.println("Symbol: " + sym + " probability: " + prob + "/" + dictionaryModel.getCountTotal());
-		}			
+		File dictionary_file = new File(base + "-tileSize-" + TILE_SIZE + "-dictSize-" + DICTIONARY_SIZE + "-buckets-" + BUCKETS+ "-dictionary.dat");
+		OutputStream dictionary_stream = new FileOutputStream(dictionary_file);
+		BitSink dictionary_sink = new BufferedBitSink(dictionary_stream);
 
-		SymbolEncoder residualEncoder = new ArithmeticEncoder(residualModel);
-		Symbol[] residualSymbols = new Unsigned8BitSymbol[256];
-		for (int v=0; v<256; v++) {
-			SymbolModel s = residualModel.getByIndex(v);
-			Symbol sym = s.getSymbol();
-			residualSymbols[v] = sym;
+		File residual_file = new File(base + "-tileSize-" + TILE_SIZE + "-dictSize-" + DICTIONARY_SIZE + "-buckets-" + BUCKETS+ "-residuals.dat");
+		OutputStream residual_stream = new FileOutputStream(residual_file);
+		BitSink residual_sink = new BufferedBitSink(residual_stream);
 
-			long prob = s.getProbability(residualModel.getCountTotal());
-			System.out.println("Symbol: " + sym + " probability: " + prob + "/" + residualModel.getCountTotal());
-		}			
-		
-		//InputStream message = new FileInputStream(file);
+		// Tiles of the next frame are matched on the pool while the
+		// current frame is entropy coded, so two frames are in flight.
+		ForkJoinPool matching_pool = new ForkJoinPool(
+				Math.max(1, Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors())));
+		Frame[] frames = { new Frame(WIDTH, HEIGHT), new Frame(WIDTH, HEIGHT) };
+		Frame residual_frame = new Frame(WIDTH, HEIGHT);
 
-		File out_file = new File(base + "-tileSize-" + TILE_SIZE + "-dictSize-" + DICTIONARY_SIZE + "-buckets-" + BUCKETS+ "-dictionary.dat");
-		OutputStream out_stream = new FileOutputStream(out_file);
-		BitSink bit_sink = new OutputStreamBitSink(out_stream);
+		video.read(0, frames[0]);
+		MatchTileRows next_match = matchFrameTask(frames[0], tiles);
+		matching_pool.execute(next_match);
 
 		for (int f=0; f < NUM_FRAMES; f++) {
-			System.out.println("Encoding frame difference " + f);
-			int[][] frame_dictionary = video_dictionary_encoding[f];
-			//int[][] diff_frame = frameDifference(prior_frame, current_frame);
-			encodeFrameDifference(frame_dictionary, dictionaryEncoder, bit_sink, dictionarySymbols);
-		}
-
-		dictionaryEncoder.close(bit_sink);
-		out_stream.close();
-
-		
-		InputStream message = new FileInputStream(file);
+			System.out.println("Encoding frame " + f);
+			Frame current_frame = frames[f % 2];
+			next_match.join();
+			int[] dictionaryFrame = next_match.tileFrame;
 
-		out_file = new File(base + "-tileSize-" + TILE_SIZE + "-dictSize-" + DICTIONARY_SIZE + "-buckets-" + BUCKETS+ "-residuals.dat");
-		out_stream = new FileOutputStream(out_file);
-		bit_sink = new OutputStreamBitSink(out_stream);
+			if (f+1 < NUM_FRAMES) {
+				video.read(f+1, frames[(f+1) % 2]);
+				next_match = matchFrameTask(frames[(f+1) % 2], tiles);
+				matching_pool.execute(next_match);
+			}
 
-		current_frame = new int[width][height];
+			dictionaryEncoder.encode(dictionaryFrame, 0, dictionaryFrame.length, dictionary_sink);
 
-		for (int f=0; f < NUM_FRAMES; f++) {
-			System.out.println("Encoding frame residuals " + f);
-			current_frame = readFrame(message, WIDTH, HEIGHT);
-			int[][] residualFrame = residualsFromEncodedFrame(current_frame, video_dictionary_encoding[f], TILE_SIZE, BUCKETS, dictionary);
-			encodeFrameDifference(residualFrame, residualEncoder, bit_sink, residualSymbols);
+			residualsFromEncodedFrame(current_frame, dictionaryFrame, tiles, residual_frame);
+			encodeFrameDifference(residual_frame, residualEncoder, residual_sink);
 		}
 		
-		message.close();
-		residualEncoder.close(bit_sink);
-		out_stream.close();
+		matching_pool.shutdown();
+		video.close();
+		dictionaryEncoder.close(dictionary_sink);
+		dictionary_stream.close();
+		residualEncoder.close(residual_sink);
+		residual_stream.close();
 	}
 		
 		/*BitSource bit_source = new InputStreamBitSource(new FileInputStream(out_file));
@@ -193,6 +174,25 @@ public class TileVideoApp extends VideoApp {
 		}
 		return tileNum;
 	}
+
+	/* tileNum
+	 * Same as above for a tile of a Frame.
+	 */
+	public static int tileNum(Frame frame, int tile_x, int tile_y, int tileSize, int buckets){
+		int bucketSize = 256/buckets;
+		int width = frame.getWidth();
+		byte[] pixels = frame.getPixels();
+		int tileNum = 0;
+		for (int y=tile_y; y<tileSize + tile_y; y++) {
+			int off = y * width;
+			for (int x=tile_x; x<tile_x+tileSize; x++) {
+				int frameVal = ((pixels[off+x] & 0xff) + bucketSize/2) % 256;
+				tileNum *= buckets;
+				tileNum += frameVal / bucketSize;
+			}
+		}
+		return tileNum;
+	}
 	
 	/**
 	 * Given a tile number, the length and height of the tile, and the number of buckets we have, 
@@ -222,73 +222,77 @@ public class TileVideoApp extends VideoApp {
 	
 	/**
 	 * Given a fixed dictionary of tiles, will find the best possible tile for an area of a frame.
-	 * Best is determined by smallest absolute difference.
+	 * Best is determined by smallest sum of squared differences, the lowest index winning ties.
 	 *
 	 * @param frame Image of the current frame. 
-	 * @param tile_x X coordinate of the tile relative to the frame.
-	 * @param tile_y Y coordinate of the tile relative to the frame.
-	 * @param tileSize Size of the tile. If this is 1, it will do bucketing on a pixel level.
-	 * @param buckets Number of buckets we want our model to have for each tile.
-	 * @param dictionary Array of tile numbers which represent a dictionary of possible tiles we can encode.
+	 * @param tile_x X pixel coordinate of the top left corner of the tile.
+	 * @param tile_y Y pixel coordinate of the top left corner of the tile.
+	 * @param dictionary Decoded dictionary of possible tiles we can encode.
+	 * @param scratch Work space of at least dictionary.size() ints.
 	 * 
-	 * @return bestDic Index of the tile in the dictionary array which will minimize absolute difference for our tile within the
+	 * @return bestDic Index of the tile in the dictionary which will minimize the difference for our tile within the
 	 * frame during encoding.
 	 */
-	private static int bestTileFromDictonary(int[][] frame, int tile_x, int tile_y, int tileSize, int buckets, int[] dictionary){
-		int bestDic = -1;
-		int bestDiff = Integer.MAX_VALUE;
-		for(int i=0; i<dictionary.length;i++){
-			int[][] dictTile = tileNumToTile(dictionary[i], tileSize, buckets);
-			int absDiff = 0;
-			for (int y=0; y<tileSize; y++) {
-				for (int x=0; x<tileSize; x++) {
-					int tmp = Math.abs(frame[tile_x+x][tile_y+y] - dictTile[x][y]);
-					absDiff += tmp * tmp;
-				}
-			}
-			if(absDiff < bestDiff){
-				bestDiff = absDiff;
-				bestDic = i;
-			}
-		}
-		return bestDic;
+	private static int bestTileFromDictonary(Frame frame, int tile_x, int tile_y, TileDictionary dictionary, int[] scratch){
+		return dictionary.best(frame, tile_x, tile_y, scratch);
 	}
 	
 	public static int[] generateTileDictonary(InputStream videoStream, int tileSize, int buckets, int dictionarySize) throws IOException{
-		int[][] current_frame = new int[WIDTH][HEIGHT];
-	
-		final class Pair implements Comparable<Pair>{
-			int idx;
-			int count;
-			public Pair(int idx) {
-				this.idx = idx;
-			}
-			public int compareTo(Pair pair2) {
-				if(this.count > pair2.count) return -1;//invert the sorting so biggest will be first in the array.
-				else if(pair2.count > this.count) return 1;
-				else if(this.idx < pair2.idx) return -1;
-				else return 1;
-			}
-			
-		}
-	
+		Frame current_frame = new Frame(WIDTH, HEIGHT);
 		
 		//Pair[] tileCount = new Pair[(int) Math.pow(buckets,tileSize * tileSize)]; 
 		Map<Integer, Pair> tileCountMap = new HashMap<Integer,Pair>();
 		
 		for (int f=0; f < NUM_FRAMES; f++) {
-			current_frame = readFrame(videoStream, WIDTH, HEIGHT);
-			for (int y=0; y<HEIGHT-tileSize+1; y+= tileSize) {
-				for (int x=0; x<WIDTH-tileSize+1; x+= tileSize) {
-					int tileNum = tileNum(current_frame, x, y, tileSize, buckets);
-					tileCountMap.putIfAbsent(tileNum, new Pair(tileNum));
-					Pair pair_idx = tileCountMap.get(tileNum);
-					pair_idx.count++;
-				}
-			}
+			current_frame.readFrom(videoStream);
+			countTiles(current_frame, tileSize, buckets, tileCountMap);
 			System.out.println("Frame i: " + f);
 		}
+		return dictionaryFromCounts(tileCountMap, dictionarySize);
+	}
+	
+	/* generateTileDictonary
+	 * Same as above, reading the frames through a YuvFrameReader.
+	 */
+	public static int[] generateTileDictonary(YuvFrameReader video, int tileSize, int buckets, int dictionarySize) throws IOException{
+		Frame current_frame = new Frame(WIDTH, HEIGHT);
+		Map<Integer, Pair> tileCountMap = new HashMap<Integer,Pair>();
 		
+		for (int f=0; f < NUM_FRAMES; f++) {
+			video.read(f, current_frame);
+			countTiles(current_frame, tileSize, buckets, tileCountMap);
+			System.out.println("Frame i: " + f);
+		}
+		return dictionaryFromCounts(tileCountMap, dictionarySize);
+	}
+	
+	private static final class Pair implements Comparable<Pair>{
+		int idx;
+		int count;
+		public Pair(int idx) {
+			this.idx = idx;
+		}
+		public int compareTo(Pair pair2) {
+			if(this.count > pair2.count) return -1;//invert the sorting so biggest will be first in the array.
+			else if(pair2.count > this.count) return 1;
+			else if(this.idx < pair2.idx) return -1;
+			else return 1;
+		}
+		
+	}
+	
+	private static void countTiles(Frame frame, int tileSize, int buckets, Map<Integer, Pair> tileCountMap){
+		for (int y=0; y<HEIGHT-tileSize+1; y+= tileSize) {
+			for (int x=0; x<WIDTH-tileSize+1; x+= tileSize) {
+				int tileNum = tileNum(frame, x, y, tileSize, buckets);
+				tileCountMap.putIfAbsent(tileNum, new Pair(tileNum));
+				Pair pair_idx = tileCountMap.get(tileNum);
+				pair_idx.count++;
+			}
+		}
+	}
+	
+	private static int[] dictionaryFromCounts(Map<Integer, Pair> tileCountMap, int dictionarySize){
 		ArrayList<Pair> counts = new ArrayList<Pair>(tileCountMap.values());
 		java.util.Collections.sort(counts);
 		
@@ -302,39 +306,108 @@ public class TileVideoApp extends VideoApp {
 		return dictionary;
 	}
 	
-	public static int[][] encodeFrameWithDictonary(int[][] frame, int tileSize, int buckets, int[] dictonary){
+	/* encodeFrameWithDictonary
+	 * Returns the dictionary index chosen for every tile, row by row.
+	 * Tile rows are matched in parallel on the common pool.
+	 */
+	public static int[] encodeFrameWithDictonary(Frame frame, int tileSize, int buckets, int[] dictonary){
+		return encodeFrameWithDictonary(frame, new TileDictionary(dictonary, tileSize, buckets), ForkJoinPool.commonPool());
+	}
+	
+	/* encodeFrameWithDictonary
+	 * Same as above on the given pool, or on the calling thread if
+	 * pool is null. Every tile row is written by exactly one task, so
+	 * the result doesn't depend on the pool.
+	 */
+	public static int[] encodeFrameWithDictonary(Frame frame, TileDictionary dictonary, ForkJoinPool pool){
+		MatchTileRows task = matchFrameTask(frame, dictonary);
+		if (pool == null) {
+			matchTileRows(frame, dictonary, task.tileFrame, task.tileWidth, task.fromRow, task.toRow);
+		} else {
+			pool.invoke(task);
+		}
+		return task.tileFrame;
+	}
+	
+	private static MatchTileRows matchFrameTask(Frame frame, TileDictionary dictonary){
+		int tileSize = dictonary.getTileSize();
 		int tileWidth = (WIDTH-tileSize+1) / tileSize;
 		int tileHeight = (HEIGHT-tileSize+1) / tileSize;
-		int[][] tileFrame = new int[tileWidth][tileHeight];
-		
-		for (int y=0; y<tileHeight; y++) {
+		int[] tileFrame = new int[tileWidth * tileHeight];
+		return new MatchTileRows(frame, dictonary, tileFrame, tileWidth, 0, tileHeight);
+	}
+	
+	private static void matchTileRows(Frame frame, TileDictionary dictonary, int[] tileFrame, int tileWidth, int fromRow, int toRow){
+		int tileSize = dictonary.getTileSize();
+		int[] scratch = new int[dictonary.size()];
+		for (int y=fromRow; y<toRow; y++) {
 			for (int x=0; x<tileWidth; x++) {
-				int bestTile = TileVideoApp.bestTileFromDictonary(frame, x, y, tileSize, buckets, dictonary);
-				tileFrame[x][y] = bestTile;
+				int bestTile = TileVideoApp.bestTileFromDictonary(frame, x*tileSize, y*tileSize, dictonary, scratch);
+				tileFrame[y*tileWidth + x] = bestTile;
 			}
 		}
-		return tileFrame;
 	}
 	
-	public static int[][] residualsFromEncodedFrame(int[][] frame, int[][] tileFrame, int tileSize, int buckets, int[] dictonary){
-		int[][] residuals = new int[WIDTH][];
-		for(int i=0; i < WIDTH; i++) residuals[i] = (int[]) frame[i].clone();
+	/* MatchTileRows
+	 * Matches tile rows [fromRow, toRow), splitting in halves down to
+	 * ROWS_PER_TASK rows.
+	 */
+	private static final class MatchTileRows extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 		
+		final Frame frame;
+		final TileDictionary dictonary;
+		final int[] tileFrame;
+		final int tileWidth;
+		final int fromRow;
+		final int toRow;
+		
+		MatchTileRows(Frame frame, TileDictionary dictonary, int[] tileFrame, int tileWidth, int fromRow, int toRow) {
+			this.frame = frame;
+			this.dictonary = dictonary;
+			this.tileFrame = tileFrame;
+			this.tileWidth = tileWidth;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+		
+		protected void compute() {
+			if (toRow - fromRow <= ROWS_PER_TASK) {
+				matchTileRows(frame, dictonary, tileFrame, tileWidth, fromRow, toRow);
+			} else {
+				int middle = (fromRow + toRow) >>> 1;
+				invokeAll(new MatchTileRows(frame, dictonary, tileFrame, tileWidth, fromRow, middle),
+						new MatchTileRows(frame, dictonary, tileFrame, tileWidth, middle, toRow));
+			}
+		}
+	}
+	
+	/* residualsFromEncodedFrame
+	 * Sets residuals to frame minus the dictionary tiles chosen by
+	 * encodeFrameWithDictonary, mod 256. Pixels past the last whole
+	 * tile are copied unchanged. The tiles are first laid out as a
+	 * predicted frame, so the subtraction itself is one pass of
+	 * Frame.difference over the whole frame.
+	 */
+	public static void residualsFromEncodedFrame(Frame frame, int[] tileFrame, int tileSize, int buckets, int[] dictonary, Frame residuals){
+		residualsFromEncodedFrame(frame, tileFrame, new TileDictionary(dictonary, tileSize, buckets), residuals);
+	}
+	
+	public static void residualsFromEncodedFrame(Frame frame, int[] tileFrame, TileDictionary dictonary, Frame residuals){
+		residuals.clear();
+		int width = residuals.getWidth();
+		byte[] pixels = residuals.getPixels();
+		
+		int tileSize = dictonary.getTileSize();
 		int tileWidth = (WIDTH-tileSize+1) / tileSize;
 		int tileHeight = (HEIGHT-tileSize+1) / tileSize;
 		
 		for (int y=0; y<tileHeight; y++) {
 			for (int x=0; x<tileWidth; x++) {
-				int dictonaryIdx = tileFrame[x][y];
-				int[][] tile = tileNumToTile(dictonary[dictonaryIdx], tileSize, buckets);
-				for(int j=0;j<tileSize;j++){
-					for(int i=0;i<tileSize;i++){
-						residuals[x*tileSize+i][y*tileSize+j] = ((residuals[x*tileSize+i][y*tileSize+j] - tile[i][j] % 256) + 256) % 256;
-					}
-				}
+				dictonary.copyTile(tileFrame[y*tileWidth + x], pixels, y*tileSize*width + x*tileSize, width);
 			}
 		}
-		return residuals;
+		Frame.difference(residuals, frame, residuals);
 	}
 	
 }
@@ -10,9 +10,13 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import video.Frame;
+import video.TileDictionary;
+
 public class TileVideoAppJTests {
 
 	@Test
@@ -113,4 +117,72 @@ public class TileVideoAppJTests {
 		assertEquals(dict[1], target);
 		//file.delete();
 	}
+	
+	/* randomDictionary
+	 * Dictionary of DICTIONARY_SIZE random tiles.
+	 */
+	private static TileDictionary randomDictionary(Random random){
+		int tilePixels = TileVideoApp.TILE_SIZE * TileVideoApp.TILE_SIZE;
+		int[] dict = new int[TileVideoApp.DICTIONARY_SIZE];
+		for(int i=0; i<dict.length; i++){
+			int tileNum = 0;
+			for(int p=0; p<tilePixels; p++){
+				tileNum = tileNum * TileVideoApp.BUCKETS + random.nextInt(TileVideoApp.BUCKETS);
+			}
+			dict[i] = tileNum;
+		}
+		return new TileDictionary(dict, TileVideoApp.TILE_SIZE, TileVideoApp.BUCKETS);
+	}
+	
+	@Test
+	public void parallelMatchingTest(){
+		Random random = new Random(590);
+		Frame frame = new Frame(TileVideoApp.WIDTH, TileVideoApp.HEIGHT);
+		random.nextBytes(frame.getPixels());
+		TileDictionary dictionary = randomDictionary(random);
+		
+		int[] serial = TileVideoApp.encodeFrameWithDictonary(frame, dictionary, null);
+		int[] common = TileVideoApp.encodeFrameWithDictonary(frame, dictionary, ForkJoinPool.commonPool());
+		ForkJoinPool pool = new ForkJoinPool(3);
+		int[] three = TileVideoApp.encodeFrameWithDictonary(frame, dictionary, pool);
+		int[] again = TileVideoApp.encodeFrameWithDictonary(frame, dictionary, pool);
+		pool.shutdown();
+		
+		assertArrayEquals(serial, common);
+		assertArrayEquals(serial, three);
+		assertArrayEquals(serial, again);
+	}
+	
+	@Test
+	public void matchAtPixelPositionTest(){
+		Random random = new Random(591);
+		Frame frame = new Frame(TileVideoApp.WIDTH, TileVideoApp.HEIGHT);
+		random.nextBytes(frame.getPixels());
+		TileDictionary dictionary = randomDictionary(random);
+		int tileSize = TileVideoApp.TILE_SIZE;
+		int tileWidth = (TileVideoApp.WIDTH-tileSize+1) / tileSize;
+		
+		// Tile (x, y) covers pixels from (x*tileSize, y*tileSize).
+		int[] tileFrame = TileVideoApp.encodeFrameWithDictonary(frame, dictionary, null);
+		for(int t=0; t<tileFrame.length; t+=97){
+			int x0 = (t % tileWidth) * tileSize;
+			int y0 = (t / tileWidth) * tileSize;
+			int best = 0;
+			long bestDifference = Long.MAX_VALUE;
+			for(int e=0; e<dictionary.size(); e++){
+				long difference = 0;
+				for(int y=0; y<tileSize; y++){
+					for(int x=0; x<tileSize; x++){
+						int d = frame.get(x0+x, y0+y) - dictionary.get(e, x, y);
+						difference += d*d;
+					}
+				}
+				if(difference < bestDifference){
+					best = e;
+					bestDifference = difference;
+				}
+			}
+			assertEquals(best, tileFrame[t]);
+		}
+	}
 }
@@ -7,26 +7,30 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Map;
 
-import models.Unsigned8BitModel;
-import codec.HuffmanEncoder;
+import models.ContextModel;
 import codec.SymbolDecoder;
 import codec.SymbolEncoder;
-import models.Symbol;
-import models.SymbolModel;
-import models.Unsigned8BitModel.Unsigned8BitSymbol;
 import io.InsufficientBitsLeftException;
 import io.BitSink;
 import io.BitSource;
 import codec.ArithmeticDecoder;
+import codec.BinaryArithmeticDecoder;
+import codec.BinaryArithmeticEncoder;
 import codec.ArithmeticEncoder;
-import codec.HuffmanDecoder;
+import codec.RangeDecoder;
+import codec.RangeEncoder;
 import io.InputStreamBitSource;
-import io.OutputStreamBitSink;
+import io.BufferedBitSink;
+import video.Frame;
+import video.FramePool;
+import video.YuvFrameReader;
 
 public class VideoApp {
 
+	public static final int RESIDUAL_CLASSES = 5;
+	public static final int RESIDUAL_CONTEXTS = RESIDUAL_CLASSES * RESIDUAL_CLASSES;
+
 	public static void main(String[] args) throws IOException, InsufficientBitsLeftException {
 		String base = "bunny";
 		String filename="/Users/kmp/tmp/" + base + ".450p.yuv";
@@ -36,52 +40,39 @@ public class VideoApp {
 		int num_frames = 150;
 
 
-		Unsigned8BitModel model = new Unsigned8BitModel();
-
-		InputStream training_values = new FileInputStream(file);
-		int[][] current_frame = new int[width][height];
-
-		for (int f=0; f < num_frames; f++) {
-			System.out.println("Training frame difference " + f);
-			int[][] prior_frame = current_frame;
-			current_frame = readFrame(training_values, width, height);
-
-			int[][] diff_frame = frameDifference(prior_frame, current_frame);
-			trainModelWithFrame(model, diff_frame);
-		}
-		training_values.close();		
-
-		//		HuffmanEncoder encoder = new HuffmanEncoder(model, model.getCountTotal());
-		//		Map<Symbol, String> code_map = encoder.getCodeMap();
-
-		SymbolEncoder encoder = new ArithmeticEncoder(model);
-
-		Symbol[] symbols = new Unsigned8BitSymbol[256];
-		for (int v=0; v<256; v++) {
-			SymbolModel s = model.getByIndex(v);
-			Symbol sym = s.getSymbol();
-			symbols[v] = sym;
+		// Single pass: the models adapt to the frame differences as
+		// they are coded and the decoder repeats the same updates.
+		// Each residual picks its model from its neighbours.
+		ContextModel contexts = new ContextModel(256, RESIDUAL_CONTEXTS);
+		SymbolEncoder encoder = new ArithmeticEncoder(contexts);
+		//		SymbolEncoder encoder = new RangeEncoder(contexts);
+		//		SymbolEncoder encoder = new BinaryArithmeticEncoder(256);
 
-			long prob = s.getProbability(model.getCountTotal());
-			System.out.println("Symbol: " + sym + " probability: " + prob + "/" + model.getCountTotal());
-		}			
-
-		InputStream message = new FileInputStream(file);
+		YuvFrameReader message = new YuvFrameReader(file, width, height);
 
 		File out_file = new File("/Users/kmp/tmp/" + base + "-compressed.dat");
 		OutputStream out_stream = new FileOutputStream(out_file);
-		BitSink bit_sink = new OutputStreamBitSink(out_stream);
+		BitSink bit_sink = new BufferedBitSink(out_stream);
 
-		current_frame = new int[width][height];
+		// Frames are recycled through the pool: at any time only the
+		// prior frame, the current frame and their difference are live.
+		FramePool frames = new FramePool(width, height);
+		Frame current_frame = frames.acquire();
+		current_frame.clear();
 
 		for (int f=0; f < num_frames; f++) {
 			System.out.println("Encoding frame difference " + f);
-			int[][] prior_frame = current_frame;
-			current_frame = readFrame(message, width, height);
-
-			int[][] diff_frame = frameDifference(prior_frame, current_frame);
-			encodeFrameDifference(diff_frame, encoder, bit_sink, symbols);
+			Frame prior_frame = current_frame;
+			current_frame = frames.acquire();
+			message.read(f, current_frame);
+
+			Frame diff_frame = frames.acquire();
+			Frame.difference(prior_frame, current_frame, diff_frame);
+			encodeFrameDifference(diff_frame, encoder, contexts, bit_sink);
+			frames.release(diff_frame);
+			frames.release(prior_frame);
 		}
+		frames.release(current_frame);
 
 		message.close();
 		encoder.close(bit_sink);
@@ -90,106 +81,118 @@ public class VideoApp {
 		BitSource bit_source = new InputStreamBitSource(new FileInputStream(out_file));
 		OutputStream decoded_file = new FileOutputStream(new File("/Users/kmp/tmp/" + base + "-decoded.dat"));
 
-		//		SymbolDecoder decoder = new HuffmanDecoder(encoder.getCodeMap());
-		SymbolDecoder decoder = new ArithmeticDecoder(model);
+		contexts = new ContextModel(256, RESIDUAL_CONTEXTS);
+		SymbolDecoder decoder = new ArithmeticDecoder(contexts);
+		//		SymbolDecoder decoder = new RangeDecoder(contexts);
+		//		SymbolDecoder decoder = new BinaryArithmeticDecoder(256);
 
-		current_frame = new int[width][height];
+		current_frame = frames.acquire();
+		current_frame.clear();
 
 		for (int f=0; f<num_frames; f++) {
 			System.out.println("Decoding frame " + f);
-			int[][] prior_frame = current_frame;
-			int[][] diff_frame = decodeFrame(decoder, bit_source, width, height);
-			current_frame = reconstructFrame(prior_frame, diff_frame);
-			outputFrame(current_frame, decoded_file);
+			Frame prior_frame = current_frame;
+			Frame diff_frame = frames.acquire();
+			decodeFrame(decoder, contexts, bit_source, diff_frame);
+			current_frame = frames.acquire();
+			Frame.reconstruct(prior_frame, diff_frame, current_frame);
+			current_frame.writeTo(decoded_file);
+			frames.release(diff_frame);
+			frames.release(prior_frame);
 		}
+		frames.release(current_frame);
 
 		decoded_file.close();
 
 	}
 
-	protected static int[][] readFrame(InputStream src, int width, int height) 
+	/* encodeFrameDifference
+	 * Frame values 0..255 are used as symbol indices directly,
+	 * so they go to the encoder as they are, one row at a time.
+	 */
+	protected static void encodeFrameDifference(Frame frame, SymbolEncoder encoder, BitSink bit_sink) 
 			throws IOException {
-		int[][] frame_data = new int[width][height];
-		for (int y=0; y<height; y++) {
-			for (int x=0; x<width; x++) {
-				frame_data[x][y] = src.read();
-			}
-		}
-		return frame_data;
-	}
-
-	private static int[][] frameDifference(int[][] prior_frame, int[][] current_frame) {
-		int width = prior_frame.length;
-		int height = prior_frame[0].length;
 
-		int[][] difference_frame = new int[width][height];
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		byte[] pixels = frame.getPixels();
 
+		int[] row = new int[width];
 		for (int y=0; y<height; y++) {
+			int off = y * width;
 			for (int x=0; x<width; x++) {
-				difference_frame[x][y] = ((current_frame[x][y] - prior_frame[x][y])+256)%256;
+				row[x] = pixels[off+x] & 0xff;
 			}
+			encoder.encode(row, 0, width, bit_sink);
 		}
-		return difference_frame;
 	}
 
-	protected static void trainModelWithFrame(Unsigned8BitModel model, int[][] frame) {
-		int width = frame.length;
-		int height = frame[0].length;
-		for (int y=0; y<height; y++) {
-			for (int x=0; x<width; x++) {
-				model.train(frame[x][y]);
-			}
-		}
-	}
-
-	protected static void encodeFrameDifference(int[][] frame, SymbolEncoder encoder, BitSink bit_sink, Symbol[] symbols) 
+	/* encodeFrameDifference
+	 * Codes every residual in the context of its already coded left
+	 * and upper neighbours. The encoder must have been given contexts
+	 * as its model. Unlike the version above this goes one symbol at
+	 * a time rather than a row at a time: the decoder only knows a
+	 * residual's context once its left neighbour has been decoded.
+	 */
+	protected static void encodeFrameDifference(Frame frame, SymbolEncoder encoder, ContextModel contexts, BitSink bit_sink) 
 			throws IOException {
 
-		int width = frame.length;
-		int height = frame[0].length;
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		byte[] pixels = frame.getPixels();
 
 		for (int y=0; y<height; y++) {
+			int off = y * width;
 			for (int x=0; x<width; x++) {
-				encoder.encode(symbols[frame[x][y]], bit_sink);
+				contexts.select(residualContext(frame, x, y));
+				encoder.encode(pixels[off+x] & 0xff, bit_sink);
 			}
 		}
 	}
 
-	private static int[][] decodeFrame(SymbolDecoder decoder, BitSource bit_source, int width, int height) 
+	private static void decodeFrame(SymbolDecoder decoder, ContextModel contexts, BitSource bit_source, Frame frame) 
 			throws InsufficientBitsLeftException, IOException {
-		int[][] frame = new int[width][height];
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		byte[] pixels = frame.getPixels();
+
 		for (int y=0; y<height; y++) {
+			int off = y * width;
 			for (int x=0; x<width; x++) {
-				frame[x][y] = ((Unsigned8BitSymbol) decoder.decode(bit_source)).getValue();
+				contexts.select(residualContext(frame, x, y));
+				pixels[off+x] = (byte) decoder.decodeIndex(bit_source);
 			}
 		}
-		return frame;
 	}
 
-	private static int[][] reconstructFrame(int[][] prior_frame, int[][] frame_difference) {
-		int width = prior_frame.length;
-		int height = prior_frame[0].length;
-
-		int[][] frame = new int[width][height];
-		for (int y=0; y<height; y++) {
-			for (int x=0; x<width; x++) {
-				frame[x][y] = (prior_frame[x][y] + frame_difference[x][y])%256;
-			}
-		}
-		return frame;
+	/* residualContext
+	 * Context of the residual at (x, y) made from the sizes of the
+	 * residuals to its left and above. Neighbours outside the frame
+	 * count as zero.
+	 */
+	protected static int residualContext(Frame frame, int x, int y) {
+		byte[] pixels = frame.getPixels();
+		int i = y * frame.getWidth() + x;
+		int left = (x > 0) ? residualClass(pixels[i-1] & 0xff) : 0;
+		int up = (y > 0) ? residualClass(pixels[i-frame.getWidth()] & 0xff) : 0;
+		return left * RESIDUAL_CLASSES + up;
 	}
 
-	private static void outputFrame(int[][] frame, OutputStream out) 
-			throws IOException {
-		int width = frame.length;
-		int height = frame[0].length;
-		for (int y=0; y<height; y++) {
-			for (int x=0; x<width; x++) {
-				out.write(frame[x][y]);
-			}
+	/* residualClass
+	 * Quantizes the magnitude of a residual taken mod 256 into one
+	 * of RESIDUAL_CLASSES classes: 0, 1, 2-3, 4-7 and 8 or more.
+	 */
+	private static int residualClass(int residual) {
+		int magnitude = (residual < 128) ? residual : 256 - residual;
+		if (magnitude < 2) {
+			return magnitude;
+		} else if (magnitude < 4) {
+			return 2;
+		} else if (magnitude < 8) {
+			return 3;
+		} else {
+			return 4;
 		}
 	}
-	
 
-	
 }
@@ -4,6 +4,8 @@ import java.io.IOException;
 
 import io.BitSource;
 import io.InsufficientBitsLeftException;
+import models.AdaptiveSourceModel;
+import models.CumulativeSourceModel;
 import models.SourceModel;
 import models.Symbol;
 import models.SymbolModel;
@@ -15,14 +17,22 @@ public class ArithmeticDecoder implements SymbolDecoder {
 	static final long THREE_QUARTER_THRESHOLD = 0xc0000000L;
 	static final long ONE_QUARTER_THRESHOLD = 0x3fffffffL;
 
+	/* Largest count total of a cumulative model. After renormalizing
+	 * the range always exceeds a quarter of 2^32, so every count of
+	 * at least 1 still gets a nonzero part of it.
+	 */
+	static final long MAX_TOTAL = 1L << 30;
+
 	private SourceModel _model;
+	private CumulativeSourceModel _cumulative;
+	private AdaptiveSourceModel _adaptive;
 	private long _low;
 	private long _high;
 	private long _buffer;
 	private int _bits_needed;
 
 	public ArithmeticDecoder(SourceModel m) {
-		_model = m;
+		model(m);
 		_low = 0;
 		_high = RANGE_MAX;
 		_bits_needed = 32;
@@ -35,6 +45,22 @@ public class ArithmeticDecoder implements SymbolDecoder {
 
 	public void model(SourceModel m) {
 		_model = m;
+		if (m instanceof CumulativeSourceModel) {
+			_cumulative = (CumulativeSourceModel) m;
+		} else {
+			_cumulative = null;
+		}
+		if (m instanceof AdaptiveSourceModel) {
+			_adaptive = (AdaptiveSourceModel) m;
+		} else {
+			_adaptive = null;
+		}
+	}
+
+	private static void checkTotal(long total) {
+		if (total > MAX_TOTAL) {
+			throw new RuntimeException("Model total too large for arithmetic coder");
+		}
 	}
 
 	private static int high_order_bit(long value) {
@@ -51,6 +77,11 @@ public class ArithmeticDecoder implements SymbolDecoder {
 
 //	@Override
 	public Symbol decode(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		return _model.getByIndex(decodeIndex(bit_source)).getSymbol();
+	}
+
+//	@Override
+	public int decodeIndex(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
 
 		if (_model == null) {
 			throw new RuntimeException("No source model installed");
@@ -63,27 +94,55 @@ public class ArithmeticDecoder implements SymbolDecoder {
 
 		long sym_range_low = _low;
 		long sym_range_high = _high;
-		Symbol sym = null;
+		int sym = -1;
 
 		if ((sym_range_low > _buffer) ||
 				(sym_range_high < _buffer)) {
 			throw new RuntimeException("Range error. This should never happen");
 		}
 
-		for (int i=0; i<_model.getSymbolCount(); i++) {
-			SymbolModel sym_model = _model.getByIndex(i);
-			if (_buffer < sym_range_low + sym_model.getProbability(range())) {
-				sym_range_high = sym_range_low + sym_model.getProbability(range()) - 1;
-				if (sym_range_high < sym_range_low) {
-					throw new RuntimeException("This shouldn't happen");
+		if (_cumulative != null) {
+			// Scale buffer into the model's count space. The symbol
+			// found is the one whose interval contains the buffer.
+			long range = range();
+			checkTotal(_cumulative.getTotal());
+			int total_bits = _cumulative.getTotalBits();
+			if (total_bits >= 0) {
+				long target = (((_buffer - _low + 1) << total_bits) - 1) / range;
+				int i = _cumulative.findIndex(target);
+				sym_range_low = _low + ((range * _cumulative.getCumulative(i)) >>> total_bits);
+				sym_range_high = _low + ((range * _cumulative.getCumulative(i+1)) >>> total_bits) - 1;
+				sym = i;
+			} else {
+				long total = _cumulative.getTotal();
+				long target = ((_buffer - _low + 1) * total - 1) / range;
+				int i = _cumulative.findIndex(target);
+				sym_range_low = _low + range * _cumulative.getCumulative(i) / total;
+				sym_range_high = _low + range * _cumulative.getCumulative(i+1) / total - 1;
+				sym = i;
+			}
+			if (sym_range_high < sym_range_low) {
+				throw new RuntimeException("This shouldn't happen");
+			}
+			if (_adaptive != null) {
+				_adaptive.update(sym);
+			}
+		} else {
+			for (int i=0; i<_model.getSymbolCount(); i++) {
+				SymbolModel sym_model = _model.getByIndex(i);
+				if (_buffer < sym_range_low + sym_model.getProbability(range())) {
+					sym_range_high = sym_range_low + sym_model.getProbability(range()) - 1;
+					if (sym_range_high < sym_range_low) {
+						throw new RuntimeException("This shouldn't happen");
+					}
+					sym = i;
+					break;
 				}
-				sym = sym_model.getSymbol();
-				break;
+				sym_range_low += sym_model.getProbability(range());
 			}
-			sym_range_low += sym_model.getProbability(range());
 		}
 
-		if (sym == null) {
+		if (sym < 0) {
 			throw new RuntimeException("Symbol model in error. Sum of probability ranges insufficient to include current value of buffer.");
 		}
 		
@@ -115,4 +174,89 @@ public class ArithmeticDecoder implements SymbolDecoder {
 
 		return sym;
 	}
+
+	/* decode
+	 * Block version of decodeIndex(). With a cumulative model the
+	 * coding interval and buffer are kept in locals for the whole
+	 * block.
+	 */
+//	@Override
+	public void decode(BitSource bit_source, int[] out, int off, int len) throws InsufficientBitsLeftException, IOException {
+		if (_cumulative == null) {
+			for (int n=off; n<off+len; n++) {
+				out[n] = decodeIndex(bit_source);
+			}
+			return;
+		}
+
+		CumulativeSourceModel m = _cumulative;
+		AdaptiveSourceModel adaptive = _adaptive;
+		int total_bits = m.getTotalBits();
+		long total = m.getTotal();
+		checkTotal(total);
+		long low = _low;
+		long high = _high;
+		long buffer = _buffer;
+		int bits_needed = _bits_needed;
+
+		try {
+			for (int n=off; n<off+len; n++) {
+				if (bits_needed > 0) {
+					buffer |= (((long) bit_source.next(bits_needed)) & LOW_WORD_MASK);
+					bits_needed = 0;
+				}
+				if ((low > buffer) || (high < buffer)) {
+					throw new RuntimeException("Range error. This should never happen");
+				}
+
+				long range = high - low + 1;
+				int i;
+				long sym_range_low;
+				long sym_range_high;
+				if (total_bits >= 0) {
+					i = m.findIndex((((buffer - low + 1) << total_bits) - 1) / range);
+					sym_range_low = low + ((range * m.getCumulative(i)) >>> total_bits);
+					sym_range_high = low + ((range * m.getCumulative(i+1)) >>> total_bits) - 1;
+				} else {
+					i = m.findIndex(((buffer - low + 1) * total - 1) / range);
+					sym_range_low = low + range * m.getCumulative(i) / total;
+					sym_range_high = low + range * m.getCumulative(i+1) / total - 1;
+				}
+				if (sym_range_high < sym_range_low) {
+					throw new RuntimeException("This shouldn't happen");
+				}
+				out[n] = i;
+				low = sym_range_low;
+				high = sym_range_high;
+				if (adaptive != null) {
+					adaptive.update(i);
+					total_bits = m.getTotalBits();
+					total = m.getTotal();
+					checkTotal(total);
+				}
+
+				int settled = Long.numberOfLeadingZeros(low ^ high) - 32;
+				if (settled > 0) {
+					buffer = (buffer << settled) & LOW_WORD_MASK;
+					bits_needed += settled;
+					high = ((high << settled) | ((1L << settled) - 1)) & LOW_WORD_MASK;
+					low = (low << settled) & LOW_WORD_MASK;
+				}
+
+				while ((high < THREE_QUARTER_THRESHOLD) && 
+					   (low > ONE_QUARTER_THRESHOLD)) {
+					long high_bit = buffer & HIGH_BIT_MASK;
+					buffer = ((buffer << 1) & LOW_WORD_MASK & ~HIGH_BIT_MASK) | high_bit;
+					bits_needed++;
+					high = ((high << 1) | 0x1 | HIGH_BIT_MASK) & LOW_WORD_MASK;
+					low = ((low << 1) & (~HIGH_BIT_MASK)) & LOW_WORD_MASK;
+				}
+			}
+		} finally {
+			_low = low;
+			_high = high;
+			_buffer = buffer;
+			_bits_needed = bits_needed;
+		}
+	}
 }
@@ -3,6 +3,8 @@ package codec;
 import java.io.IOException;
 
 import io.BitSink;
+import models.AdaptiveSourceModel;
+import models.CumulativeSourceModel;
 import models.SourceModel;
 import models.Symbol;
 import models.SymbolModel;
@@ -13,15 +15,23 @@ public class ArithmeticEncoder implements SymbolEncoder {
 	static final long LOW_WORD_MASK = 0xffffffffL;
 	static final long THREE_QUARTER_THRESHOLD = 0xc0000000L;
 	static final long ONE_QUARTER_THRESHOLD = 0x3fffffffL;
+
+	/* Largest count total of a cumulative model. After renormalizing
+	 * the range always exceeds a quarter of 2^32, so every count of
+	 * at least 1 still gets a nonzero part of it.
+	 */
+	static final long MAX_TOTAL = 1L << 30;
 	
 	private SourceModel _model;
+	private CumulativeSourceModel _cumulative;
+	private AdaptiveSourceModel _adaptive;
 	private long _low;
 	private long _high;
 	private int _pending_bits;
 	private boolean _closed;
 
 	public ArithmeticEncoder(SourceModel m) {
-		_model = m;
+		model(m);
 		_low = 0;
 		_high = RANGE_MAX;
 		_pending_bits = 0;
@@ -32,8 +42,24 @@ public class ArithmeticEncoder implements SymbolEncoder {
 		return _model;
 	}
 	
+	/* model
+	 * Installs source model. Models that provide cumulative counts
+	 * are coded in constant time per symbol, others by scanning
+	 * the symbol models. Adaptive models are updated after every
+	 * symbol.
+	 */
 	public void model(SourceModel m) {
 		_model = m;
+		if (m instanceof CumulativeSourceModel) {
+			_cumulative = (CumulativeSourceModel) m;
+		} else {
+			_cumulative = null;
+		}
+		if (m instanceof AdaptiveSourceModel) {
+			_adaptive = (AdaptiveSourceModel) m;
+		} else {
+			_adaptive = null;
+		}
 	}
 	
 	public void close(BitSink out) throws IOException {
@@ -46,18 +72,15 @@ public class ArithmeticEncoder implements SymbolEncoder {
 	
 //	@Override
 	public void encode(Symbol s, BitSink out) throws IOException {
-
-		if (_model == null) {
-			throw new RuntimeException("No source model installed");
-		}
-		
-		if (_closed) {
-			throw new RuntimeException("Arithmetic encoder already closed");
+		if (_cumulative != null) {
+			encode(_cumulative.getIndex(s), out);
+			return;
 		}
-		
+		checkState();
+
 		long sym_range_low = _low;
 		long sym_range_high = 0;
-		
+
 		for (int i=0; i<_model.getSymbolCount(); i++) {
 			SymbolModel sym_model = _model.getByIndex(i);
 			if (sym_model.getSymbol().equals(s)) {
@@ -66,12 +89,152 @@ public class ArithmeticEncoder implements SymbolEncoder {
 			}
 			sym_range_low += sym_model.getProbability(range());
 		}
-		
+
 		if (sym_range_high == 0) {
 			// This only happens if we never see the symbol. 
 			throw new RuntimeException("Symbol to be encoded not in symbol model.");
 		}
 
+		narrow(sym_range_low, sym_range_high, out);
+	}
+
+//	@Override
+	public void encode(int symbol_index, BitSink out) throws IOException {
+		checkState();
+
+		long sym_range_low = _low;
+		long sym_range_high = 0;
+
+		if (_cumulative != null) {
+			int i = symbol_index;
+			long range = range();
+			checkTotal(_cumulative.getTotal());
+			int total_bits = _cumulative.getTotalBits();
+			if (total_bits >= 0) {
+				sym_range_low = _low + ((range * _cumulative.getCumulative(i)) >>> total_bits);
+				sym_range_high = _low + ((range * _cumulative.getCumulative(i+1)) >>> total_bits) - 1;
+			} else {
+				long total = _cumulative.getTotal();
+				sym_range_low = _low + range * _cumulative.getCumulative(i) / total;
+				sym_range_high = _low + range * _cumulative.getCumulative(i+1) / total - 1;
+			}
+			if (sym_range_high < sym_range_low) {
+				throw new RuntimeException("Symbol to be encoded has zero probability in symbol model.");
+			}
+			if (_adaptive != null) {
+				_adaptive.update(i);
+			}
+		} else {
+			for (int i=0; i<symbol_index; i++) {
+				sym_range_low += _model.getByIndex(i).getProbability(range());
+			}
+			sym_range_high = sym_range_low + _model.getByIndex(symbol_index).getProbability(range()) - 1;
+			if (sym_range_high < sym_range_low) {
+				throw new RuntimeException("Symbol to be encoded has zero probability in symbol model.");
+			}
+		}
+
+		narrow(sym_range_low, sym_range_high, out);
+	}
+
+	/* encode
+	 * Block version of encode(int, BitSink). With a cumulative model
+	 * the coding interval and pending bit count live in locals for the
+	 * whole block, and all bits settled by a symbol are written with
+	 * a few calls to the sink instead of one per bit.
+	 */
+//	@Override
+	public void encode(int[] symbols, int off, int len, BitSink out) throws IOException {
+		if (_cumulative == null) {
+			for (int i=off; i<off+len; i++) {
+				encode(symbols[i], out);
+			}
+			return;
+		}
+		checkState();
+
+		CumulativeSourceModel m = _cumulative;
+		AdaptiveSourceModel adaptive = _adaptive;
+		int total_bits = m.getTotalBits();
+		long total = m.getTotal();
+		checkTotal(total);
+		long low = _low;
+		long high = _high;
+		int pending_bits = _pending_bits;
+
+		for (int n=off; n<off+len; n++) {
+			int i = symbols[n];
+			long range = high - low + 1;
+			long sym_range_low;
+			long sym_range_high;
+			if (total_bits >= 0) {
+				sym_range_low = low + ((range * m.getCumulative(i)) >>> total_bits);
+				sym_range_high = low + ((range * m.getCumulative(i+1)) >>> total_bits) - 1;
+			} else {
+				sym_range_low = low + range * m.getCumulative(i) / total;
+				sym_range_high = low + range * m.getCumulative(i+1) / total - 1;
+			}
+			if (sym_range_high < sym_range_low) {
+				_low = low;
+				_high = high;
+				_pending_bits = pending_bits;
+				throw new RuntimeException("Symbol to be encoded has zero probability in symbol model.");
+			}
+			low = sym_range_low;
+			high = sym_range_high;
+			if (adaptive != null) {
+				adaptive.update(i);
+				total_bits = m.getTotalBits();
+				total = m.getTotal();
+				checkTotal(total);
+			}
+
+			// Leading bits low and high agree on are settled. The first
+			// of them is followed by the pending underflow bits.
+			int settled = Long.numberOfLeadingZeros(low ^ high) - 32;
+			if (settled > 0) {
+				int first_bit = (int) (high >>> 31);
+				out.write(first_bit, 1);
+				while (pending_bits > 0) {
+					int count = Math.min(pending_bits, 32);
+					out.write(first_bit == 1 ? 0 : -1, count);
+					pending_bits -= count;
+				}
+				if (settled > 1) {
+					out.write((int) (high >>> (32 - settled)), settled - 1);
+				}
+				high = ((high << settled) | ((1L << settled) - 1)) & LOW_WORD_MASK;
+				low = (low << settled) & LOW_WORD_MASK;
+			}
+
+			while ((high < THREE_QUARTER_THRESHOLD) && 
+				   (low > ONE_QUARTER_THRESHOLD)) {
+				pending_bits++;
+				high = ((high << 1) | 0x1 | HIGH_BIT_MASK) & LOW_WORD_MASK;
+				low = ((low << 1) & (~HIGH_BIT_MASK)) & LOW_WORD_MASK;
+			}
+		}
+
+		_low = low;
+		_high = high;
+		_pending_bits = pending_bits;
+	}
+
+	private void checkState() {
+		if (_model == null) {
+			throw new RuntimeException("No source model installed");
+		}
+		
+		if (_closed) {
+			throw new RuntimeException("Arithmetic encoder already closed");
+		}
+	}
+
+	/* narrow
+	 * Sets the coding interval to the range of the symbol just
+	 * encoded and shifts out all bits that are already determined.
+	 */
+	private void narrow(long sym_range_low, long sym_range_high, BitSink out) throws IOException {
 		_high = sym_range_high;
 		_low = sym_range_low;
 		
@@ -94,6 +257,12 @@ public class ArithmeticEncoder implements SymbolEncoder {
 		}				
 	}
 
+	private static void checkTotal(long total) {
+		if (total > MAX_TOTAL) {
+			throw new RuntimeException("Model total too large for arithmetic coder");
+		}
+	}
+
 	private static int high_order_bit(long value) {
 		if ((value & HIGH_BIT_MASK) == HIGH_BIT_MASK) {
 			return 1;
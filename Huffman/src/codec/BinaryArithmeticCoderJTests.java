@@ -0,0 +1,123 @@
+package codec;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+import io.BitSink;
+import io.BitSource;
+import io.BufferedBitSink;
+import io.InputStreamBitSource;
+import io.InsufficientBitsLeftException;
+
+public class BinaryArithmeticCoderJTests {
+
+	/* skewedBits
+	 * Bits that are 1 with probability p_one.
+	 */
+	private static int[] skewedBits(int count, double p_one, long seed) {
+		Random random = new Random(seed);
+		int[] bits = new int[count];
+		for (int i=0; i<count; i++) {
+			bits[i] = (random.nextDouble() < p_one) ? 1 : 0;
+		}
+		return bits;
+	}
+
+	private static byte[] encode(int symbol_count, int[] values) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		BinaryArithmeticEncoder encoder = new BinaryArithmeticEncoder(symbol_count);
+		encoder.encode(values, 0, values.length, bit_sink);
+		encoder.close(bit_sink);
+		return out.toByteArray();
+	}
+
+	private static byte[] assertRoundTrip(int symbol_count, int[] values) throws IOException, InsufficientBitsLeftException {
+		byte[] bytes = encode(symbol_count, values);
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+		BinaryArithmeticDecoder decoder = new BinaryArithmeticDecoder(symbol_count);
+		for (int i=0; i<values.length; i++) {
+			assertEquals(values[i], decoder.decodeIndex(bit_source));
+		}
+		return bytes;
+	}
+
+	@Test
+	public void skewedBitsRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		double[] p_ones = { 0.5, 0.1, 0.01, 0.001, 0.999 };
+		for (int n=0; n<p_ones.length; n++) {
+			int[] bits = skewedBits(100000, p_ones[n], 590 + n);
+			byte[] bytes = assertRoundTrip(2, bits);
+			if (p_ones[n] != 0.5) {
+				// Well under a bit per bit once the estimate adapts.
+				assertTrue(bytes.length < bits.length / 8 / 2);
+			}
+		}
+	}
+
+	@Test
+	public void runsRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		// Long runs drive the estimate to its limits and back, and the
+		// 0xff bytes they produce exercise carry propagation.
+		int[] bits = new int[60000];
+		for (int i=20000; i<40000; i++) {
+			bits[i] = 1;
+		}
+		byte[] bytes = assertRoundTrip(2, bits);
+		assertTrue(bytes.length < 1000);
+	}
+
+	@Test
+	public void alphabetRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		// 300 symbols leave part of the 9 bit tree unused.
+		Random random = new Random(591);
+		int[] values = new int[50000];
+		for (int i=0; i<values.length; i++) {
+			values[i] = Math.min(299, (int) (-6 * Math.log(1.0 - random.nextDouble())));
+		}
+		assertRoundTrip(300, values);
+		assertRoundTrip(1, new int[100]);
+	}
+
+	@Test
+	public void probabilityBoundsTest() throws IOException, InsufficientBitsLeftException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		BinaryArithmeticEncoder encoder = new BinaryArithmeticEncoder(2);
+		int[] bits = new int[3000];
+		for (int i=1000; i<2000; i++) {
+			bits[i] = 1;
+		}
+
+		// Estimates must stay strictly between 0 and 1 or one of the
+		// two bit values would get an empty interval.
+		int min = BinaryArithmeticEncoder.PROB_ONE;
+		int max = 0;
+		for (int i=0; i<bits.length; i++) {
+			encoder.encode(bits[i], bit_sink);
+			int p = encoder.getProbability(1);
+			assertTrue(p > 0 && p < BinaryArithmeticEncoder.PROB_ONE);
+			min = Math.min(min, p);
+			max = Math.max(max, p);
+		}
+		encoder.close(bit_sink);
+
+		// Shift updates stop moving within 2^MOVE_BITS of the ends.
+		int limit = (1 << BinaryArithmeticEncoder.MOVE_BITS) - 1;
+		assertEquals(limit, min);
+		assertEquals(BinaryArithmeticEncoder.PROB_ONE - limit, max);
+
+		// The decoder adapts the same way.
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(out.toByteArray()));
+		BinaryArithmeticDecoder decoder = new BinaryArithmeticDecoder(2);
+		for (int i=0; i<bits.length; i++) {
+			assertEquals(bits[i], decoder.decodeIndex(bit_source));
+		}
+		assertEquals(encoder.getProbability(1), decoder.getProbability(1));
+	}
+}
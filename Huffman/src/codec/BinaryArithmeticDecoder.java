@@ -0,0 +1,89 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSource;
+import io.InsufficientBitsLeftException;
+import models.SourceModel;
+import models.Symbol;
+
+public class BinaryArithmeticDecoder extends ByteRangeDecoder {
+	static final int PROB_BITS = BinaryArithmeticEncoder.PROB_BITS;
+	static final int PROB_ONE = BinaryArithmeticEncoder.PROB_ONE;
+	static final int MOVE_BITS = BinaryArithmeticEncoder.MOVE_BITS;
+
+	private SourceModel _model;
+	private int _symbol_count;
+	private int _bits;
+	private short[] _probs;
+
+	public BinaryArithmeticDecoder(SourceModel m) {
+		this(m.getSymbolCount());
+		_model = m;
+	}
+
+	public BinaryArithmeticDecoder(int symbol_count) {
+		if (symbol_count < 1) {
+			throw new IllegalArgumentException("Alphabet needs at least one symbol");
+		}
+		_model = null;
+		_symbol_count = symbol_count;
+		_bits = BinaryArithmeticEncoder.treeBits(symbol_count);
+		_probs = BinaryArithmeticEncoder.initialProbs(_bits);
+	}
+
+	/* getProbability
+	 * Current estimate that the next bit at node is 0, in units of
+	 * 2^-PROB_BITS.
+	 */
+	int getProbability(int node) {
+		return _probs[node];
+	}
+
+//	@Override
+	public Symbol decode(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		if (_model == null) {
+			throw new RuntimeException("No source model installed");
+		}
+		return _model.getByIndex(decodeIndex(bit_source)).getSymbol();
+	}
+
+//	@Override
+	public int decodeIndex(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		start(bit_source);
+		int node = 1;
+		for (int b=0; b<_bits; b++) {
+			node = (node << 1) | decodeBit(node, bit_source);
+		}
+		int symbol_index = node - (1 << _bits);
+		if (symbol_index >= _symbol_count) {
+			throw new RuntimeException("Decoded symbol not in alphabet");
+		}
+		return symbol_index;
+	}
+
+//	@Override
+	public void decode(BitSource bit_source, int[] out, int off, int len) throws InsufficientBitsLeftException, IOException {
+		for (int i=off; i<off+len; i++) {
+			out[i] = decodeIndex(bit_source);
+		}
+	}
+
+	private int decodeBit(int node, BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		int p = _probs[node];
+		long bound = (_range >>> PROB_BITS) * p;
+		int bit;
+		if (_code < bound) {
+			_range = bound;
+			_probs[node] = (short) (p + ((PROB_ONE - p) >>> MOVE_BITS));
+			bit = 0;
+		} else {
+			_code -= bound;
+			_range -= bound;
+			_probs[node] = (short) (p - (p >>> MOVE_BITS));
+			bit = 1;
+		}
+		renormalize(bit_source);
+		return bit;
+	}
+}
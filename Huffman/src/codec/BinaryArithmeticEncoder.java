@@ -0,0 +1,129 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSink;
+import models.SourceModel;
+import models.Symbol;
+
+/* BinaryArithmeticEncoder
+ * Adaptive binary range coder in the style of the LZMA bit models.
+ * A symbol index is coded as the bits of a binary tree, most
+ * significant bit first, and every node of the tree has its own
+ * PROB_BITS bit estimate of the probability of a 0. Estimates are
+ * updated by shifts after each bit, so coding needs no model
+ * training and no division. The coded stream is the same byte
+ * oriented range coder output as RangeEncoder produces.
+ */
+public class BinaryArithmeticEncoder extends ByteRangeEncoder {
+	static final int PROB_BITS = 12;
+	static final int PROB_ONE = 1 << PROB_BITS;
+	static final int MOVE_BITS = 5;
+
+	private SourceModel _model;
+	private int _symbol_count;
+	private int _bits;
+	private short[] _probs;
+	private boolean _closed;
+
+	/* BinaryArithmeticEncoder
+	 * Model m only defines the alphabet, i.e. which index a symbol
+	 * has. Its counts are not used.
+	 */
+	public BinaryArithmeticEncoder(SourceModel m) {
+		this(m.getSymbolCount());
+		_model = m;
+	}
+
+	public BinaryArithmeticEncoder(int symbol_count) {
+		if (symbol_count < 1) {
+			throw new IllegalArgumentException("Alphabet needs at least one symbol");
+		}
+		_model = null;
+		_symbol_count = symbol_count;
+		_bits = treeBits(symbol_count);
+		_probs = initialProbs(_bits);
+		_closed = false;
+	}
+
+	/* treeBits
+	 * Number of bits needed for indices below symbol_count.
+	 */
+	static int treeBits(int symbol_count) {
+		return 32 - Integer.numberOfLeadingZeros(symbol_count - 1);
+	}
+
+	/* initialProbs
+	 * Probabilities of the nodes of a tree of the given depth, node 1
+	 * being the root and node n having children 2n and 2n+1. All
+	 * start out at one half.
+	 */
+	static short[] initialProbs(int bits) {
+		short[] probs = new short[1 << bits];
+		for (int i=0; i<probs.length; i++) {
+			probs[i] = (short) (PROB_ONE / 2);
+		}
+		return probs;
+	}
+
+	/* getProbability
+	 * Current estimate that the next bit at node is 0, in units of
+	 * 2^-PROB_BITS.
+	 */
+	int getProbability(int node) {
+		return _probs[node];
+	}
+
+//	@Override
+	public void encode(Symbol s, BitSink out) throws IOException {
+		if (_model == null) {
+			throw new RuntimeException("No source model installed");
+		}
+		encode(_model.getIndex(s), out);
+	}
+
+//	@Override
+	public void encode(int symbol_index, BitSink out) throws IOException {
+		if (_closed) {
+			throw new RuntimeException("Binary arithmetic encoder already closed");
+		}
+		if (symbol_index < 0 || symbol_index >= _symbol_count) {
+			throw new RuntimeException("Symbol not in alphabet");
+		}
+		int node = 1;
+		for (int b=_bits-1; b>=0; b--) {
+			int bit = (symbol_index >>> b) & 0x1;
+			encodeBit(node, bit, out);
+			node = (node << 1) | bit;
+		}
+	}
+
+//	@Override
+	public void encode(int[] symbols, int off, int len, BitSink out) throws IOException {
+		for (int i=off; i<off+len; i++) {
+			encode(symbols[i], out);
+		}
+	}
+
+//	@Override
+	public void close(BitSink out) throws IOException {
+		if (!_closed) {
+			_closed = true;
+			flush(out);
+		}
+	}
+
+	private void encodeBit(int node, int bit, BitSink out) throws IOException {
+		int p = _probs[node];
+		long bound = (_range >>> PROB_BITS) * p;
+		if (bit == 0) {
+			_range = bound;
+			_probs[node] = (short) (p + ((PROB_ONE - p) >>> MOVE_BITS));
+		} else {
+			_low += bound;
+			_range -= bound;
+			_probs[node] = (short) (p - (p >>> MOVE_BITS));
+		}
+		renormalize(out);
+	}
+}
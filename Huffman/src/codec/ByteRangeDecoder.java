@@ -0,0 +1,61 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSource;
+import io.InsufficientBitsLeftException;
+
+/* ByteRangeDecoder
+ * Input side shared by RangeDecoder and BinaryArithmeticDecoder,
+ * matching ByteRangeEncoder. _code is the offset of the coded value
+ * within the current interval of size _range. Subclasses call
+ * start() before decoding, narrow _code and _range for each symbol
+ * or bit and then call renormalize().
+ */
+abstract class ByteRangeDecoder implements SymbolDecoder {
+	static final long TOP = ByteRangeEncoder.TOP;
+	static final long RANGE_MAX = ByteRangeEncoder.RANGE_MAX;
+	static final long LOW_WORD_MASK = ByteRangeEncoder.LOW_WORD_MASK;
+
+	long _code;
+	long _range;
+	private boolean _initialized;
+
+	ByteRangeDecoder() {
+		_code = 0;
+		_range = RANGE_MAX;
+		_initialized = false;
+	}
+
+	/* start
+	 * Reads the first bytes of the stream into _code, once. The
+	 * first byte is the encoder's initial cache byte.
+	 */
+	final void start(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		if (!_initialized) {
+			for (int i=0; i<5; i++) {
+				_code = shiftIn(_code, bit_source);
+			}
+			_initialized = true;
+		}
+	}
+
+	/* renormalize
+	 * Widens _range back to at least TOP a byte at a time.
+	 */
+	final void renormalize(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		while (_range < TOP) {
+			_code = shiftIn(_code, bit_source);
+			_range <<= 8;
+		}
+	}
+
+	/* shiftIn
+	 * Returns code with the next byte of the stream shifted in.
+	 * Takes code as an argument so that block decoders can keep it
+	 * in a local.
+	 */
+	final long shiftIn(long code, BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		return ((code << 8) | bit_source.next(8)) & LOW_WORD_MASK;
+	}
+}
@@ -0,0 +1,71 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSink;
+
+/* ByteRangeEncoder
+ * Output side shared by RangeEncoder and BinaryArithmeticEncoder.
+ * Subclasses narrow the interval [_low, _low + _range) for each
+ * symbol or bit and then call renormalize(), which writes bytes out
+ * once the top byte of _low is settled. Carries are propagated
+ * through a cached byte followed by a run of pending 0xff bytes.
+ */
+abstract class ByteRangeEncoder implements SymbolEncoder {
+	static final long TOP = 1L << 24;
+	static final long RANGE_MAX = 0xffffffffL;
+	static final long LOW_WORD_MASK = 0xffffffffL;
+
+	long _low;
+	long _range;
+	private int _cache;
+	private long _cache_size;
+
+	ByteRangeEncoder() {
+		_low = 0;
+		_range = RANGE_MAX;
+		_cache = 0;
+		_cache_size = 1;
+	}
+
+	/* renormalize
+	 * Widens _range back to at least TOP a byte at a time.
+	 */
+	final void renormalize(BitSink out) throws IOException {
+		while (_range < TOP) {
+			_range <<= 8;
+			_low = shiftLow(_low, out);
+		}
+	}
+
+	/* flush
+	 * Writes out the rest of _low and the cached bytes, then pads
+	 * the sink to a word.
+	 */
+	final void flush(BitSink out) throws IOException {
+		for (int i=0; i<5; i++) {
+			_low = shiftLow(_low, out);
+		}
+		out.padToWord();
+	}
+
+	/* shiftLow
+	 * Moves the top byte of low out and returns the new low. The
+	 * byte is held back in _cache as long as a carry may still
+	 * change it. Takes low as an argument so that block encoders
+	 * can keep it in a local.
+	 */
+	final long shiftLow(long low, BitSink out) throws IOException {
+		if (low < 0xff000000L || low > LOW_WORD_MASK) {
+			int carry = (int) (low >>> 32);
+			int temp = _cache;
+			do {
+				out.write((temp + carry) & 0xff, 8);
+				temp = 0xff;
+			} while (--_cache_size != 0);
+			_cache = (int) ((low >>> 24) & 0xff);
+		}
+		_cache_size++;
+		return (low & 0x00ffffffL) << 8;
+	}
+}
@@ -0,0 +1,164 @@
+package codec;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.BitSink;
+import io.BitSource;
+import io.InsufficientBitsLeftException;
+import models.SourceModel;
+import models.Symbol;
+
+public class CanonicalHuffmanCode {
+
+	public static final int MAX_CODE_LENGTH = 32;
+	static final int SYMBOL_COUNT_BITS = 32;
+	static final int LENGTH_BITS = 6;
+
+	/* Code word and length per symbol index. Code words are
+	 * right aligned. A length of 0 means the symbol has no code.
+	 */
+	private int[] _codes;
+	private byte[] _lengths;
+
+	/* CanonicalHuffmanCode
+	 * Assigns canonical code words to the given code lengths.
+	 * Shorter codes come first and codes of equal length are
+	 * assigned in symbol index order.
+	 */
+	public CanonicalHuffmanCode(int[] lengths) {
+		int[] length_counts = new int[MAX_CODE_LENGTH+1];
+		for (int i=0; i<lengths.length; i++) {
+			if (lengths[i] < 0 || lengths[i] > MAX_CODE_LENGTH) {
+				throw new IllegalArgumentException("Code length must be between 0 and " + MAX_CODE_LENGTH);
+			}
+			length_counts[lengths[i]]++;
+		}
+		length_counts[0] = 0;
+
+		// Kraft sum in units of 2^-MAX_CODE_LENGTH
+		long kraft = 0;
+		for (int l=1; l<=MAX_CODE_LENGTH; l++) {
+			kraft += ((long) length_counts[l]) << (MAX_CODE_LENGTH - l);
+		}
+		if (kraft > (1L << MAX_CODE_LENGTH)) {
+			throw new IllegalArgumentException("Code lengths are over-subscribed");
+		}
+
+		long[] next_code = new long[MAX_CODE_LENGTH+1];
+		long code = 0;
+		for (int l=1; l<=MAX_CODE_LENGTH; l++) {
+			code = (code + length_counts[l-1]) << 1;
+			next_code[l] = code;
+		}
+
+		_codes = new int[lengths.length];
+		_lengths = new byte[lengths.length];
+		for (int i=0; i<lengths.length; i++) {
+			int l = lengths[i];
+			_lengths[i] = (byte) l;
+			if (l > 0) {
+				_codes[i] = (int) next_code[l];
+				next_code[l]++;
+			}
+		}
+	}
+
+	public static CanonicalHuffmanCode fromModel(SourceModel m, long precision) {
+		int[] lengths = HuffmanEncoder.createCodeLengthsFromModel(m, precision);
+		for (int i=0; i<lengths.length; i++) {
+			if (lengths[i] > MAX_CODE_LENGTH) {
+				throw new RuntimeException("Code for symbol " + i + " longer than " + MAX_CODE_LENGTH + " bits");
+			}
+		}
+		return new CanonicalHuffmanCode(lengths);
+	}
+
+	public static CanonicalHuffmanCode fromModel(SourceModel m, long precision, int max_length) {
+		return new CanonicalHuffmanCode(HuffmanEncoder.createCodeLengthsFromModel(m, precision, max_length));
+	}
+
+	/* fromCodeMap
+	 * Keeps only the code lengths of code_map, indexed in the
+	 * same order as the symbols of model m.
+	 */
+	public static CanonicalHuffmanCode fromCodeMap(SourceModel m, Map<Symbol, String> code_map) {
+		int[] lengths = new int[m.getSymbolCount()];
+		for (int i=0; i<lengths.length; i++) {
+			String code = code_map.get(m.getByIndex(i).getSymbol());
+			if (code != null) {
+				if (code.length() > MAX_CODE_LENGTH) {
+					throw new RuntimeException("Code for symbol " + i + " longer than " + MAX_CODE_LENGTH + " bits");
+				}
+				lengths[i] = code.length();
+			}
+		}
+		return new CanonicalHuffmanCode(lengths);
+	}
+
+	public int getSymbolCount() {
+		return _codes.length;
+	}
+
+	public int getCode(int symbol_index) {
+		return _codes[symbol_index];
+	}
+
+	public int getLength(int symbol_index) {
+		return _lengths[symbol_index];
+	}
+
+	/* getCodeString
+	 * Code of symbol as a binary string, or null if the symbol
+	 * has no code.
+	 */
+	public String getCodeString(int symbol_index) {
+		int length = _lengths[symbol_index];
+		if (length == 0) {
+			return null;
+		}
+		StringBuilder code = new StringBuilder(length);
+		for (int b=length-1; b>=0; b--) {
+			code.append(((_codes[symbol_index] >>> b) & 0x1) == 0x1 ? '1' : '0');
+		}
+		return code.toString();
+	}
+
+	/* getCodeMap
+	 * Same code as a map usable with HuffmanEncoder and
+	 * HuffmanDecoder. Symbols are taken from model m.
+	 */
+	public Map<Symbol, String> getCodeMap(SourceModel m) {
+		Map<Symbol, String> code_map = new HashMap<Symbol, String>();
+		for (int i=0; i<_codes.length; i++) {
+			if (_lengths[i] > 0) {
+				code_map.put(m.getByIndex(i).getSymbol(), getCodeString(i));
+			}
+		}
+		return code_map;
+	}
+
+	/* writeHeader
+	 * Writes the symbol count followed by the code length of every
+	 * symbol. Code words themselves are implied by the lengths.
+	 */
+	public void writeHeader(BitSink out) throws IOException {
+		out.write(_lengths.length, SYMBOL_COUNT_BITS);
+		for (int i=0; i<_lengths.length; i++) {
+			out.write(_lengths[i], LENGTH_BITS);
+		}
+	}
+
+	public static CanonicalHuffmanCode readHeader(BitSource in) throws InsufficientBitsLeftException, IOException {
+		int symbol_count = in.next(SYMBOL_COUNT_BITS);
+		if (symbol_count < 0) {
+			throw new RuntimeException("Corrupt code header");
+		}
+		int[] lengths = new int[symbol_count];
+		for (int i=0; i<symbol_count; i++) {
+			lengths[i] = in.next(LENGTH_BITS);
+		}
+		return new CanonicalHuffmanCode(lengths);
+	}
+}
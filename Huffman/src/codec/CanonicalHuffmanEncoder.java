@@ -0,0 +1,81 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSink;
+import models.SourceModel;
+import models.Symbol;
+
+public class CanonicalHuffmanEncoder implements SymbolEncoder {
+
+	private CanonicalHuffmanCode _code;
+	private int[] _codes;
+	private byte[] _lengths;
+	private SourceModel _model;
+	private boolean _closed;
+
+	public CanonicalHuffmanEncoder(CanonicalHuffmanCode code, SourceModel m) {
+		_code = code;
+		_codes = new int[code.getSymbolCount()];
+		_lengths = new byte[code.getSymbolCount()];
+		_model = m;
+		for (int i=0; i<_codes.length; i++) {
+			_codes[i] = code.getCode(i);
+			_lengths[i] = (byte) code.getLength(i);
+		}
+		_closed = false;
+	}
+
+	public CanonicalHuffmanEncoder(SourceModel m, long precision) {
+		this(CanonicalHuffmanCode.fromModel(m, precision), m);
+	}
+
+	public CanonicalHuffmanEncoder(SourceModel m, long precision, int max_length) {
+		this(CanonicalHuffmanCode.fromModel(m, precision, max_length), m);
+	}
+
+	public CanonicalHuffmanCode getCode() {
+		return _code;
+	}
+
+//	@Override
+	public void encode(Symbol s, BitSink out) throws IOException {
+		encode(_model.getIndex(s), out);
+	}
+
+	/* encode
+	 * Encodes symbol by its index in the source model.
+	 */
+	public void encode(int symbol_index, BitSink out) throws IOException {
+		if (_closed) {
+			throw new RuntimeException("Attempt to encode symbol on closed encoder");
+		}
+		int length = _lengths[symbol_index];
+		if (length == 0) {
+			throw new RuntimeException("Symbol not in code map");
+		}
+		out.write(_codes[symbol_index], length);
+	}
+
+//	@Override
+	public void encode(int[] symbols, int off, int len, BitSink out) throws IOException {
+		if (_closed) {
+			throw new RuntimeException("Attempt to encode symbol on closed encoder");
+		}
+		int[] codes = _codes;
+		byte[] lengths = _lengths;
+		for (int i=off; i<off+len; i++) {
+			int length = lengths[symbols[i]];
+			if (length == 0) {
+				throw new RuntimeException("Symbol not in code map");
+			}
+			out.write(codes[symbols[i]], length);
+		}
+	}
+
+//	@Override
+	public void close(BitSink out) throws IOException {
+		out.padToWord();
+		_closed = true;
+	}
+}
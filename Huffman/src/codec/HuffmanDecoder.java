@@ -1,141 +1,222 @@
 package codec;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+
+import models.SourceModel;
 import models.Symbol;
 import io.BitSource;
 import io.InsufficientBitsLeftException;
 
 public class HuffmanDecoder implements SymbolDecoder {
 
-	private HDNode _root;
-	
+	public static final int DEFAULT_LOOKUP_BITS = 10;
+	public static final int MIN_LOOKUP_BITS = 9;
+	public static final int MAX_LOOKUP_BITS = 12;
+
+	/* Table entries are packed ints. A leaf holds the symbol index
+	 * and the number of bits to consume at its level:
+	 *     (symbol_index << 5) | length
+	 * A link to a secondary table has LINK_FLAG set and holds the
+	 * offset of that table and the number of bits it is indexed by:
+	 *     LINK_FLAG | (offset << 5) | bits
+	 * Zero marks an entry no code reaches.
+	 */
+	static final int LINK_FLAG = 0x80000000;
+	static final int LENGTH_MASK = 0x1f;
+
+	private Symbol[] _symbols;
+	private int[] _table;
+	private int _table_size;
+	private int _lookup_bits;
+	private int _root_bits;
+
 	public HuffmanDecoder(Map<Symbol, String> code_map) {
-		_root = new HDInternalNode();
-
-		for (Symbol symbol : code_map.keySet()) {
-			String code = code_map.get(symbol);
-			HDNode node = _root;
-			for (int i=0; i<code.length()-1; i++) {
-				if (code.charAt(i) == '0') {
-					node = node.zeroChild();
-				} else {
-					node = node.oneChild();
-				}
-			}
-			if (code.charAt(code.length()-1) == '0') {
-				node.zeroChild(new HDLeafNode(symbol));
-			} else {
-				node.oneChild(new HDLeafNode(symbol));
-			}
+		this(code_map, DEFAULT_LOOKUP_BITS);
+	}
+
+	public HuffmanDecoder(Map<Symbol, String> code_map, int lookup_bits) {
+		// Symbol indices follow the natural ordering of the symbols.
+		Symbol[] symbols = code_map.keySet().toArray(new Symbol[code_map.size()]);
+		Arrays.sort(symbols);
+
+		String[] codes = new String[symbols.length];
+		for (int i=0; i<symbols.length; i++) {
+			codes[i] = code_map.get(symbols[i]);
 		}
-		
-		if (!_root.isSet()) {
-			throw new RuntimeException("Code map provided does not define leafs on all paths through tree");
+		buildTables(symbols, codes, lookup_bits);
+	}
+
+	/* HuffmanDecoder
+	 * Decodes a canonical code, e.g. one read back with
+	 * CanonicalHuffmanCode.readHeader(). Model m only supplies the
+	 * symbol for each index.
+	 */
+	public HuffmanDecoder(CanonicalHuffmanCode code, SourceModel m) {
+		this(code, m, DEFAULT_LOOKUP_BITS);
+	}
+
+	public HuffmanDecoder(CanonicalHuffmanCode code, SourceModel m, int lookup_bits) {
+		Symbol[] symbols = new Symbol[code.getSymbolCount()];
+		String[] codes = new String[code.getSymbolCount()];
+		for (int i=0; i<symbols.length; i++) {
+			symbols[i] = m.getByIndex(i).getSymbol();
+			codes[i] = code.getCodeString(i);
 		}
+		buildTables(symbols, codes, lookup_bits);
 	}
-	
+
 	/* (non-Javadoc)
 	 * @see codec.SymbolDecoder#decode(io.BitSource)
 	 */
 //	@Override
 	public Symbol decode(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
-		HDNode node = _root;
-		
-		while (!node.isLeaf()) {
-			if (bit_source.next(1) == 0x1) {
-				node = node.oneChild();
-			} else {
-				node = node.zeroChild();
-			}
-		}
-		return ((HDLeafNode) node).symbol();
-	}
-	
-	private abstract class HDNode {
-		abstract boolean isLeaf();
-		abstract boolean isSet();
-		abstract HDNode zeroChild();
-		abstract HDNode oneChild();
-		abstract void zeroChild(HDNode leaf);
-		abstract void oneChild(HDNode leaf);
+		return _symbols[decodeIndex(bit_source)];
 	}
-	
-	private class HDLeafNode extends HDNode {
-		private Symbol _symbol;
-		
-		public HDLeafNode(Symbol symbol) {
-			_symbol = symbol;
-		}
-		
-		public boolean isLeaf() {return true;}
-		public boolean isSet() {return true;}
-		
-		public HDNode zeroChild() {
-			throw new RuntimeException("Can't ask for child of leaf");
-		}
-		public HDNode oneChild() {
-			throw new RuntimeException("Can't ask for child of leaf");
-		}
-		public void zeroChild(HDNode node) {
-			throw new RuntimeException("Can't set child of leaf");
+
+	/* decodeIndex
+	 * Decodes next symbol and returns its index. For decoders built
+	 * from a canonical code this is the index in the source model.
+	 */
+	public int decodeIndex(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		int bits = _root_bits;
+		int entry = _table[bit_source.peek(bits)];
+
+		while (entry < 0) {
+			bit_source.consume(bits);
+			bits = entry & LENGTH_MASK;
+			entry = _table[((entry & ~LINK_FLAG) >>> 5) + bit_source.peek(bits)];
 		}
-		public void oneChild(HDNode node) {
-			throw new RuntimeException("Can't set child of leaf");
-		}		
-		
-		public Symbol symbol() {
-			return _symbol;
+		bit_source.consume(entry & LENGTH_MASK);
+		return entry >>> 5;
+	}
+
+//	@Override
+	public void decode(BitSource bit_source, int[] out, int off, int len) throws InsufficientBitsLeftException, IOException {
+		for (int i=off; i<off+len; i++) {
+			out[i] = decodeIndex(bit_source);
 		}
 	}
-	
-	private class HDInternalNode extends HDNode {
-
-		private HDNode _zero;
-		private HDNode _one;
-		
-		public HDInternalNode() {
-			_zero = null;
-			_one = null;
+
+	/* Lookup table and bits indexing its root level, for decoders
+	 * in this package that read bits on their own.
+	 */
+	int[] getTable() {
+		return _table;
+	}
+
+	int getRootBits() {
+		return _root_bits;
+	}
+
+	/* buildTables
+	 * Symbols with a null code are left out of the tables.
+	 */
+	private void buildTables(Symbol[] symbols, String[] codes, int lookup_bits) {
+		if (lookup_bits < MIN_LOOKUP_BITS || lookup_bits > MAX_LOOKUP_BITS) {
+			throw new IllegalArgumentException("Lookup bits must be between " + MIN_LOOKUP_BITS + " and " + MAX_LOOKUP_BITS);
 		}
-		
-		public boolean isLeaf() { return false;}
-		
-		public boolean isSet() {
-			return ((_zero != null) &&
-				    (_one != null) &&
-				    (_zero.isSet()) &&
-				    (_one.isSet()));
+		_lookup_bits = lookup_bits;
+		_symbols = symbols;
+
+		int member_count = 0;
+		int max_length = 0;
+		for (int i=0; i<codes.length; i++) {
+			if (codes[i] != null) {
+				member_count++;
+				max_length = Math.max(max_length, codes[i].length());
+			}
 		}
-		
-		public HDNode zeroChild() {
-			if (_zero == null) {
-				_zero = new HDInternalNode();
+		int[] members = new int[member_count];
+		member_count = 0;
+		for (int i=0; i<codes.length; i++) {
+			if (codes[i] != null) {
+				members[member_count++] = i;
 			}
-			
-			return _zero;
 		}
-		
-		public void zeroChild(HDNode child) {
-			if (_zero != null) {
-				throw new RuntimeException("Zero child should only be set once.");
+
+		_table = new int[1 << _lookup_bits];
+		_table_size = 0;
+		_root_bits = Math.min(_lookup_bits, max_length);
+		buildTable(codes, members, 0, _root_bits);
+
+		for (int i=0; i<_table_size; i++) {
+			if (_table[i] == 0) {
+				throw new RuntimeException("Code map provided does not define leafs on all paths through tree");
 			}
-			_zero = child;
 		}
-		
-		public HDNode oneChild() {
-			if (_one == null) {
-				_one = new HDInternalNode();
+	}
+
+	/* buildTable
+	 * Builds the table for all codes in members sharing their first
+	 * prefix_length bits, indexed by the next table_bits bits. Codes
+	 * that don't end within the table get a secondary table per slot.
+	 * Returns the offset of the new table.
+	 */
+	private int buildTable(String[] codes, int[] members, int prefix_length, int table_bits) {
+		int offset = allocate(1 << table_bits);
+		Map<Integer, List<Integer>> longer = new TreeMap<Integer, List<Integer>>();
+
+		for (int m : members) {
+			String code = codes[m];
+			int rest = code.length() - prefix_length;
+			if (rest <= table_bits) {
+				int first = parseBits(code, prefix_length, rest) << (table_bits - rest);
+				int last = first + (1 << (table_bits - rest));
+				for (int i=first; i<last; i++) {
+					if (_table[offset + i] != 0) {
+						throw new RuntimeException("Code map provided is not prefix free");
+					}
+					_table[offset + i] = (m << 5) | rest;
+				}
+			} else {
+				int slot = parseBits(code, prefix_length, table_bits);
+				if (!longer.containsKey(slot)) {
+					longer.put(slot, new ArrayList<Integer>());
+				}
+				longer.get(slot).add(m);
 			}
-			return _one;
 		}
-		
-		public void oneChild(HDNode child) {
-			if (_one != null) {
-				throw new RuntimeException("One child should only be set once.");
+
+		for (Map.Entry<Integer, List<Integer>> group : longer.entrySet()) {
+			int slot = group.getKey();
+			int[] sub_members = new int[group.getValue().size()];
+			int max_rest = 0;
+			for (int i=0; i<sub_members.length; i++) {
+				sub_members[i] = group.getValue().get(i);
+				max_rest = Math.max(max_rest, codes[sub_members[i]].length() - prefix_length - table_bits);
 			}
-			_one = child;
+			if (_table[offset + slot] != 0) {
+				throw new RuntimeException("Code map provided is not prefix free");
+			}
+			int sub_bits = Math.min(max_rest, _lookup_bits);
+			int sub_offset = buildTable(codes, sub_members, prefix_length + table_bits, sub_bits);
+			_table[offset + slot] = LINK_FLAG | (sub_offset << 5) | sub_bits;
 		}
+		return offset;
+	}
 
+	private int allocate(int size) {
+		int offset = _table_size;
+		_table_size += size;
+		if (_table_size > _table.length) {
+			_table = Arrays.copyOf(_table, Math.max(_table_size, 2 * _table.length));
+		}
+		return offset;
+	}
+
+	private static int parseBits(String code, int start, int count) {
+		int bits = 0;
+		for (int i=start; i<start+count; i++) {
+			bits <<= 1;
+			if (code.charAt(i) != '0') {
+				bits |= 0x1;
+			}
+		}
+		return bits;
 	}
 }
@@ -0,0 +1,132 @@
+package codec;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import io.BitSink;
+import io.BitSource;
+import io.BufferedBitSink;
+import io.InputStreamBitSource;
+import io.InsufficientBitsLeftException;
+import models.IntAlphabetModel;
+import models.Symbol;
+
+public class HuffmanDecoderJTests {
+
+	/* chainLengths
+	 * Symbol i has an i+1 bit code, with the last two symbols sharing
+	 * the longest length. The longest codes need two levels of
+	 * secondary tables below any root table.
+	 */
+	private static int[] chainLengths(int longest) {
+		int[] lengths = new int[longest + 1];
+		for (int i=0; i<longest; i++) {
+			lengths[i] = i + 1;
+		}
+		lengths[longest] = longest;
+		return lengths;
+	}
+
+	/* randomIndices
+	 * Every symbol index appears, in random order and with a bias
+	 * towards the long codes.
+	 */
+	private static int[] randomIndices(int symbol_count, int count, long seed) {
+		Random random = new Random(seed);
+		int[] values = new int[count];
+		for (int i=0; i<count; i++) {
+			values[i] = (i < symbol_count) ? i : symbol_count - 1 - random.nextInt(symbol_count / 2 + 1);
+		}
+		for (int i=count-1; i>0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = values[i];
+			values[i] = values[j];
+			values[j] = t;
+		}
+		return values;
+	}
+
+	private static byte[] encode(SymbolEncoder encoder, int[] values) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		encoder.encode(values, 0, values.length, bit_sink);
+		encoder.close(bit_sink);
+		return out.toByteArray();
+	}
+
+	private static void assertDecodes(int[] values, byte[] bytes, HuffmanDecoder decoder)
+			throws IOException, InsufficientBitsLeftException {
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+		for (int i=0; i<values.length; i++) {
+			assertEquals(values[i], decoder.decodeIndex(bit_source));
+		}
+	}
+
+	private static boolean hasLinks(HuffmanDecoder decoder) {
+		int[] table = decoder.getTable();
+		for (int i=0; i<(1 << decoder.getRootBits()); i++) {
+			if ((table[i] & HuffmanDecoder.LINK_FLAG) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void longCodesTest() throws IOException, InsufficientBitsLeftException {
+		for (int longest=HuffmanDecoder.MIN_LOOKUP_BITS+1; longest<=CanonicalHuffmanCode.MAX_CODE_LENGTH; longest++) {
+			CanonicalHuffmanCode code = new CanonicalHuffmanCode(chainLengths(longest));
+			IntAlphabetModel model = new IntAlphabetModel(0, longest);
+			int[] values = randomIndices(longest + 1, 5000, longest);
+			byte[] bytes = encode(new CanonicalHuffmanEncoder(code, model), values);
+
+			for (int bits=HuffmanDecoder.MIN_LOOKUP_BITS; bits<=HuffmanDecoder.MAX_LOOKUP_BITS; bits++) {
+				HuffmanDecoder decoder = new HuffmanDecoder(code, model, bits);
+				assertEquals(longest > bits, hasLinks(decoder));
+				assertDecodes(values, bytes, decoder);
+			}
+		}
+	}
+
+	@Test
+	public void codeMapLongCodesTest() throws IOException, InsufficientBitsLeftException {
+		// Codes of 14 to 17 bits below a single root slot, decoded from
+		// a code map rather than a canonical code.
+		int[] lengths = new int[24];
+		for (int i=0; i<12; i++) {
+			lengths[i] = i + 1;
+		}
+		for (int i=12; i<24; i++) {
+			lengths[i] = (i < 14) ? 14 : (i < 18) ? 17 : 16;
+		}
+		CanonicalHuffmanCode code = new CanonicalHuffmanCode(lengths);
+		IntAlphabetModel model = new IntAlphabetModel(0, 23);
+		Map<Symbol, String> code_map = code.getCodeMap(model);
+		int[] values = randomIndices(24, 5000, 590);
+		byte[] bytes = encode(new HuffmanEncoder(code_map), values);
+
+		HuffmanDecoder decoder = new HuffmanDecoder(code_map);
+		assertTrue(hasLinks(decoder));
+		assertDecodes(values, bytes, decoder);
+		assertDecodes(values, bytes, new HuffmanDecoder(code, model, HuffmanDecoder.MAX_LOOKUP_BITS));
+	}
+
+	@Test
+	public void shortCodesTest() throws IOException, InsufficientBitsLeftException {
+		// Codes shorter than the lookup width use a smaller root table
+		// and no links.
+		CanonicalHuffmanCode code = new CanonicalHuffmanCode(chainLengths(5));
+		IntAlphabetModel model = new IntAlphabetModel(0, 5);
+		int[] values = randomIndices(6, 1000, 591);
+		HuffmanDecoder decoder = new HuffmanDecoder(code, model);
+		assertEquals(5, decoder.getRootBits());
+		assertFalse(hasLinks(decoder));
+		assertDecodes(values, encode(new CanonicalHuffmanEncoder(code, model), values), decoder);
+	}
+}
@@ -1,16 +1,13 @@
 package codec;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import models.SourceModel;
 import models.Symbol;
-import models.SymbolModel;
 
 import io.BitSink;
 
@@ -19,16 +16,50 @@ public class HuffmanEncoder implements SymbolEncoder {
 
 	private Map<Symbol, String> _code_map;
 	private boolean _closed;
+
+	/* Codes by symbol index, where indices follow the natural ordering
+	 * of the symbols as in HuffmanDecoder. Codes that can't be written
+	 * as a single int, i.e. empty or longer than 32 bits, only have
+	 * their string form in _long_codes.
+	 */
+	private int[] _codes;
+	private byte[] _lengths;
+	private String[] _long_codes;
 	
 	public HuffmanEncoder(Map<Symbol, String> code_map) {
 		_code_map = code_map;
 		_closed = false;
+
+		Symbol[] symbols = code_map.keySet().toArray(new Symbol[code_map.size()]);
+		Arrays.sort(symbols);
+		_codes = new int[symbols.length];
+		_lengths = new byte[symbols.length];
+		_long_codes = new String[symbols.length];
+		for (int i=0; i<symbols.length; i++) {
+			String code = code_map.get(symbols[i]);
+			if (code.length() == 0 || code.length() > 32) {
+				_long_codes[i] = code;
+			} else {
+				_lengths[i] = (byte) code.length();
+				for (int b=0; b<code.length(); b++) {
+					_codes[i] = (_codes[i] << 1) | (code.charAt(b) == '0' ? 0 : 1);
+				}
+			}
+		}
 	}
 
 	public HuffmanEncoder(SourceModel source_model, long precision) {
 		this(createCodeMapFromModel(source_model, precision));
 	}
 
+	/* HuffmanEncoder
+	 * Same as above but no code will be longer than max_length
+	 * bits, which bounds the size of decoder lookup tables.
+	 */
+	public HuffmanEncoder(SourceModel source_model, long precision, int max_length) {
+		this(createCodeMapFromModel(source_model, precision, max_length));
+	}
+
 	public Map<Symbol, String> getCodeMap() {
 		return _code_map;
 	}
@@ -46,6 +77,41 @@ public class HuffmanEncoder implements SymbolEncoder {
 		}
 	}
 
+//	@Override
+	public void encode(int symbol_index, BitSink out) throws IOException {
+		if (_closed) {
+			throw new RuntimeException("Attempt to encode symbol on closed encoder");
+		}
+		int length = _lengths[symbol_index];
+		if (length > 0) {
+			out.write(_codes[symbol_index], length);
+		} else if (_long_codes[symbol_index] != null) {
+			out.write(_long_codes[symbol_index]);
+		} else {
+			throw new RuntimeException("Symbol not in code map");
+		}
+	}
+
+//	@Override
+	public void encode(int[] symbols, int off, int len, BitSink out) throws IOException {
+		if (_closed) {
+			throw new RuntimeException("Attempt to encode symbol on closed encoder");
+		}
+		int[] codes = _codes;
+		byte[] lengths = _lengths;
+		for (int i=off; i<off+len; i++) {
+			int s = symbols[i];
+			int length = lengths[s];
+			if (length > 0) {
+				out.write(codes[s], length);
+			} else if (_long_codes[s] != null) {
+				out.write(_long_codes[s]);
+			} else {
+				throw new RuntimeException("Symbol not in code map");
+			}
+		}
+	}
+
 //	@Override
 	public void close(BitSink out) throws IOException {
 		out.padToWord();
@@ -53,129 +119,275 @@ public class HuffmanEncoder implements SymbolEncoder {
 	}
 
 	public static Map<Symbol, String> createCodeMapFromModel(SourceModel m, long precision) {
+		HuffmanTree tree = new HuffmanTree(weightsFromModel(m, precision));
 
-		int symbol_count = m.getSymbolCount();
-
-		List<HENode> nodes = new ArrayList<HENode>();
-		for (int i=0; i<symbol_count; i++) {
-			nodes.add(new HELeafNode(m.getByIndex(i), precision));
-		}
-
-		while (nodes.size() > 1) { 
-			Collections.sort(nodes, new Comparator<HENode>() {
-	//			@Override
-				public int compare(HENode a, HENode b) {
-					if (a.probability() < b.probability()) {
-						return 1;
-					} else if (a.probability() > b.probability()) {
-						return -1;
-					} else {
-						if (a.depthBelow() < b.depthBelow()) {
-							return 1;
-						} else if (a.depthBelow() > b.depthBelow()) {
-							return -1;
-						}
-					}
-					return 0;
-				}
-			});
-			HENode a = nodes.remove(nodes.size()-1);
-			HENode b = nodes.remove(nodes.size()-1);
-			nodes.add(new HEInternalNode(a, b));
+		Symbol[] symbols = new Symbol[m.getSymbolCount()];
+		for (int i=0; i<symbols.length; i++) {
+			symbols[i] = m.getByIndex(i).getSymbol();
 		}
 
-		HENode root = nodes.get(0);
-
 		Map<Symbol, String> code_map = new HashMap<Symbol, String>();
-		root.addCodesToMap("", code_map);
+		tree.addCodesToMap(symbols, code_map);
 		return code_map;
 	}
 
-}
-
-abstract class HENode {
-
-	abstract public long probability();
-	abstract public int depthBelow();
-	abstract public void addCodesToMap(String prefix, Map<Symbol, String> map);
+	/* createCodeLengthsFromModel
+	 * Code length per symbol index of the same code that
+	 * createCodeMapFromModel() builds.
+	 */
+	public static int[] createCodeLengthsFromModel(SourceModel m, long precision) {
+		return new HuffmanTree(weightsFromModel(m, precision)).codeLengths();
+	}
 
-	private long _precision;
+	/* createCodeMapFromModel
+	 * Length limited version. If the plain Huffman code lengths
+	 * already fit within max_length bits they are kept, otherwise
+	 * package-merge code lengths are used. Either way the code words
+	 * are canonical, so the tree is only built once.
+	 */
+	public static Map<Symbol, String> createCodeMapFromModel(SourceModel m, long precision, int max_length) {
+		if (max_length < 1 || max_length > CanonicalHuffmanCode.MAX_CODE_LENGTH) {
+			throw new IllegalArgumentException("Maximum code length must be between 1 and " + CanonicalHuffmanCode.MAX_CODE_LENGTH);
+		}
+		int[] lengths = createCodeLengthsFromModel(m, precision);
+		for (int l : lengths) {
+			if (l > max_length) {
+				lengths = createCodeLengthsFromModel(m, precision, max_length);
+				break;
+			}
+		}
+		return new CanonicalHuffmanCode(lengths).getCodeMap(m);
+	}
 
-	public HENode(long precision) {
-		this._precision = precision;
+	public static int[] createCodeLengthsFromModel(SourceModel m, long precision, int max_length) {
+		if (max_length < 1 || max_length > CanonicalHuffmanCode.MAX_CODE_LENGTH) {
+			throw new IllegalArgumentException("Maximum code length must be between 1 and " + CanonicalHuffmanCode.MAX_CODE_LENGTH);
+		}
+		return PackageMerge.codeLengths(weightsFromModel(m, precision), max_length);
 	}
 
-	public long precision() {
-		return _precision;
+	static long[] weightsFromModel(SourceModel m, long precision) {
+		long[] weights = new long[m.getSymbolCount()];
+		for (int i=0; i<weights.length; i++) {
+			weights[i] = m.getByIndex(i).getProbability(precision);
+		}
+		return weights;
 	}
 
 }
 
-class HEInternalNode extends HENode {
+/* PackageMerge
+ * Optimal code lengths subject to a maximum length, using the
+ * package-merge algorithm of Larmore and Hirschberg.
+ */
+class PackageMerge {
+
+	public static int[] codeLengths(final long[] weights, int max_length) {
+		int n = weights.length;
+		int[] lengths = new int[n];
+		if (n == 1) {
+			lengths[0] = 1;
+			return lengths;
+		}
+		if (n > (1L << max_length)) {
+			throw new IllegalArgumentException("Too many symbols for codes of at most " + max_length + " bits");
+		}
 
-	private HENode _node0;
-	private HENode _node1;
-	private long _probability;
-	private int _depth_below;
+		Integer[] order = new Integer[n];
+		for (int i=0; i<n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+//			@Override
+			public int compare(Integer a, Integer b) {
+				if (weights[a] != weights[b]) {
+					return weights[a] < weights[b] ? -1 : 1;
+				}
+				return a.compareTo(b);
+			}
+		});
+		long[] leaf_weights = new long[n];
+		for (int i=0; i<n; i++) {
+			leaf_weights[i] = weights[order[i]];
+		}
 
-	public HEInternalNode(HENode a, HENode b) {
-		super(a.precision());
+		// Level 0 holds the leaves only. Every further level merges the
+		// leaves with packages made of adjacent pairs of the level below.
+		boolean[][] is_package = new boolean[max_length][];
+		is_package[0] = new boolean[n];
+		long[] level_weights = leaf_weights;
+		for (int level=1; level<max_length; level++) {
+			int package_count = level_weights.length / 2;
+			int size = n + package_count;
+			long[] merged = new long[size];
+			is_package[level] = new boolean[size];
+
+			int leaf = 0;
+			int pkg = 0;
+			for (int j=0; j<size; j++) {
+				long package_weight = Long.MAX_VALUE;
+				if (pkg < package_count) {
+					package_weight = level_weights[2*pkg] + level_weights[2*pkg+1];
+				}
+				if (leaf < n && leaf_weights[leaf] <= package_weight) {
+					merged[j] = leaf_weights[leaf++];
+				} else {
+					merged[j] = package_weight;
+					is_package[level][j] = true;
+					pkg++;
+				}
+			}
+			level_weights = merged;
+		}
 
-		if (a.precision() != b.precision()) {
-			throw new RuntimeException("Precision associated with child nodes must be equal");
+		// The cheapest 2n-2 items of the top level form the solution. The
+		// packages among a prefix of one level expand to a prefix of the
+		// level below, and every leaf occurrence adds one to its length.
+		int selected = 2 * n - 2;
+		for (int level=max_length-1; level>=0; level--) {
+			int packages = 0;
+			int leaf = 0;
+			for (int j=0; j<selected; j++) {
+				if (is_package[level][j]) {
+					packages++;
+				} else {
+					lengths[order[leaf++]]++;
+				}
+			}
+			selected = 2 * packages;
 		}
+		return lengths;
+	}
 
-		_node0 = a;
-		_node1 = b;
+}
 
-		_probability = a.probability()+b.probability();
-		if (a.depthBelow() > b.depthBelow()) {
-			_depth_below = 1 + a.depthBelow();
-		} else {
-			_depth_below = 1 + b.depthBelow();
+/* HuffmanTree
+ * Huffman tree over primitive arrays. Leaves are nodes 0..n-1 in
+ * symbol index order, internal nodes are numbered n, n+1, ... in
+ * the order they are created. Nodes are merged lightest first; ties
+ * go to the shallower subtree and then to the higher node number,
+ * which is the order the old sort based construction produced.
+ */
+class HuffmanTree {
+
+	private int _leaf_count;
+	private int[] _zero;
+	private int[] _one;
+	private int _root;
+
+	private long[] _weight;
+	private int[] _depth;
+	private int[] _heap;
+	private int _heap_size;
+
+	public HuffmanTree(long[] weights) {
+		_leaf_count = weights.length;
+		int node_count = 2 * _leaf_count - 1;
+
+		_weight = new long[node_count];
+		_depth = new int[node_count];
+		_zero = new int[_leaf_count];
+		_one = new int[_leaf_count];
+		_heap = new int[_leaf_count];
+		_heap_size = 0;
+
+		for (int i=0; i<_leaf_count; i++) {
+			_weight[i] = weights[i];
+			_heap[_heap_size++] = i;
+		}
+		for (int i=_heap_size/2-1; i>=0; i--) {
+			siftDown(i);
 		}
-	}
 
-	@Override
-	public long probability() {
-		return _probability;
-	}
+		int next = _leaf_count;
+		while (_heap_size > 1) {
+			int a = pop();
+			int b = pop();
+			_weight[next] = _weight[a] + _weight[b];
+			_depth[next] = 1 + Math.max(_depth[a], _depth[b]);
+			_zero[next - _leaf_count] = a;
+			_one[next - _leaf_count] = b;
+			push(next);
+			next++;
+		}
+		_root = pop();
 
-	@Override
-	public int depthBelow() {
-		return _depth_below;
+		_weight = null;
+		_depth = null;
+		_heap = null;
 	}
 
-	@Override
-	public void addCodesToMap(String prefix, Map<Symbol, String> map) {
-		_node0.addCodesToMap(prefix+"0", map);
-		_node1.addCodesToMap(prefix+"1", map);
+	public int[] codeLengths() {
+		int[] lengths = new int[_root + 1];
+		// Parents are numbered after their children.
+		for (int node=_root; node>=_leaf_count; node--) {
+			lengths[_zero[node - _leaf_count]] = lengths[node] + 1;
+			lengths[_one[node - _leaf_count]] = lengths[node] + 1;
+		}
+		return Arrays.copyOf(lengths, _leaf_count);
 	}
 
-}
-
-class HELeafNode extends HENode {
-
-	private SymbolModel _sym_model;
-
-	public HELeafNode(SymbolModel symbol_model, long precision) {
-		super(precision);
-		_sym_model = symbol_model;
+	public void addCodesToMap(Symbol[] symbols, Map<Symbol, String> map) {
+		String[] codes = new String[_root + 1];
+		codes[_root] = "";
+		for (int node=_root; node>=_leaf_count; node--) {
+			codes[_zero[node - _leaf_count]] = codes[node] + "0";
+			codes[_one[node - _leaf_count]] = codes[node] + "1";
+		}
+		for (int i=0; i<_leaf_count; i++) {
+			map.put(symbols[i], codes[i]);
+		}
 	}
 
+	/* mergesBefore
+	 * True if node a should be merged before node b.
+	 */
+	private boolean mergesBefore(int a, int b) {
+		if (_weight[a] != _weight[b]) {
+			return _weight[a] < _weight[b];
+		}
+		if (_depth[a] != _depth[b]) {
+			return _depth[a] < _depth[b];
+		}
+		return a > b;
+	}
 
-	@Override
-	public long probability() {
-		return _sym_model.getProbability(precision());
+	private void push(int node) {
+		int i = _heap_size++;
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!mergesBefore(node, _heap[parent])) {
+				break;
+			}
+			_heap[i] = _heap[parent];
+			i = parent;
+		}
+		_heap[i] = node;
 	}
 
-	@Override
-	public int depthBelow() {
-		return 0;
+	private int pop() {
+		int top = _heap[0];
+		_heap[0] = _heap[--_heap_size];
+		siftDown(0);
+		return top;
 	}
 
-	@Override
-	public void addCodesToMap(String prefix, Map<Symbol, String> map) {
-		map.put(_sym_model.getSymbol(), prefix);
+	private void siftDown(int i) {
+		int node = _heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= _heap_size) {
+				break;
+			}
+			if (child + 1 < _heap_size && mergesBefore(_heap[child + 1], _heap[child])) {
+				child++;
+			}
+			if (!mergesBefore(_heap[child], node)) {
+				break;
+			}
+			_heap[i] = _heap[child];
+			i = child;
+		}
+		_heap[i] = node;
 	}
 }
@@ -0,0 +1,186 @@
+package codec;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import io.BitSink;
+import io.BitSource;
+import io.BufferedBitSink;
+import io.InputStreamBitSource;
+import io.InsufficientBitsLeftException;
+import models.IntAlphabetModel;
+import models.Symbol;
+
+public class HuffmanEncoderJTests {
+
+	/* fibonacciWeights
+	 * Weights for which the plain Huffman code is a chain n-1 deep,
+	 * the deepest possible for n symbols.
+	 */
+	private static long[] fibonacciWeights(int n) {
+		long[] weights = new long[n];
+		long a = 1;
+		long b = 1;
+		for (int i=0; i<n; i++) {
+			weights[i] = a;
+			long t = a + b;
+			a = b;
+			b = t;
+		}
+		return weights;
+	}
+
+	private static int maxLength(int[] lengths) {
+		int max = 0;
+		for (int l : lengths) {
+			max = Math.max(max, l);
+		}
+		return max;
+	}
+
+	/* assertKraft
+	 * Kraft sum of the code lengths is at most 1, i.e. the lengths
+	 * make a prefix code.
+	 */
+	private static void assertKraft(int[] lengths) {
+		long kraft = 0;
+		for (int l : lengths) {
+			assertTrue(l >= 1 && l <= CanonicalHuffmanCode.MAX_CODE_LENGTH);
+			kraft += 1L << (CanonicalHuffmanCode.MAX_CODE_LENGTH - l);
+		}
+		assertTrue(kraft <= 1L << CanonicalHuffmanCode.MAX_CODE_LENGTH);
+	}
+
+	private static long cost(long[] weights, int[] lengths) {
+		long cost = 0;
+		for (int i=0; i<weights.length; i++) {
+			cost += weights[i] * lengths[i];
+		}
+		return cost;
+	}
+
+	private static int[] huffmanLengths(long[] weights) {
+		return new HuffmanTree(weights).codeLengths();
+	}
+
+	@Test
+	public void bindingLimitTest() {
+		long[] weights = fibonacciWeights(30);
+		int[] unlimited = huffmanLengths(weights);
+		assertEquals(29, maxLength(unlimited));
+
+		long previous_cost = cost(weights, unlimited);
+		for (int limit=28; limit>=5; limit--) {
+			int[] lengths = PackageMerge.codeLengths(weights, limit);
+			assertEquals(limit, maxLength(lengths));
+			assertKraft(lengths);
+			// Tighter limits can only cost more.
+			long c = cost(weights, lengths);
+			assertTrue(c >= previous_cost);
+			previous_cost = c;
+		}
+	}
+
+	@Test
+	public void smallLimitTest() {
+		// Huffman gives 4,4,3,2,1. With at most 3 bits the best code is
+		// 3,3,3,3,1 at a cost of 32; 3,3,2,2,2 would cost 34.
+		long[] weights = { 1, 1, 2, 4, 8 };
+		assertArrayEquals(new int[] { 4, 4, 3, 2, 1 }, huffmanLengths(weights));
+		int[] lengths = PackageMerge.codeLengths(weights, 3);
+		assertArrayEquals(new int[] { 3, 3, 3, 3, 1 }, lengths);
+		assertEquals(32, cost(weights, lengths));
+		assertKraft(lengths);
+
+		// 2 bit codes can't tell 5 symbols apart.
+		try {
+			PackageMerge.codeLengths(weights, 2);
+			fail("5 symbols fit in 2 bit codes");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void nonBindingLimitTest() {
+		// When the limit doesn't bind the result is as cheap as Huffman.
+		Random random = new Random(590);
+		for (int trial=0; trial<20; trial++) {
+			long[] weights = new long[2 + random.nextInt(300)];
+			for (int i=0; i<weights.length; i++) {
+				weights[i] = 1 + random.nextInt(1000);
+			}
+			int[] unlimited = huffmanLengths(weights);
+			int[] lengths = PackageMerge.codeLengths(weights, CanonicalHuffmanCode.MAX_CODE_LENGTH);
+			assertKraft(lengths);
+			assertEquals(cost(weights, unlimited), cost(weights, lengths));
+		}
+	}
+
+	@Test
+	public void fullKraftSumTest() {
+		// Limited codes waste no code space.
+		long[] weights = fibonacciWeights(20);
+		int[] lengths = PackageMerge.codeLengths(weights, 8);
+		long kraft = 0;
+		for (int l : lengths) {
+			kraft += 1L << (8 - l);
+		}
+		assertEquals(1L << 8, kraft);
+	}
+
+	@Test
+	public void limitedCodeRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		// Counts shaped like fibonacciWeights() give a model whose plain
+		// Huffman code is too deep for 12 bit codes.
+		long[] counts = fibonacciWeights(25);
+		IntAlphabetModel model = new IntAlphabetModel(0, counts);
+		assertTrue(maxLength(HuffmanEncoder.createCodeLengthsFromModel(model, 1L << 32)) > 12);
+		int[] lengths = HuffmanEncoder.createCodeLengthsFromModel(model, 1L << 32, 12);
+		assertTrue(maxLength(lengths) <= 12);
+		assertKraft(lengths);
+
+		CanonicalHuffmanCode code = new CanonicalHuffmanCode(lengths);
+		Random random = new Random(591);
+		int[] values = new int[10000];
+		for (int i=0; i<values.length; i++) {
+			values[i] = random.nextInt(25);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		CanonicalHuffmanEncoder encoder = new CanonicalHuffmanEncoder(code, model);
+		encoder.encode(values, 0, values.length, bit_sink);
+		encoder.close(bit_sink);
+
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(out.toByteArray()));
+		HuffmanDecoder decoder = new HuffmanDecoder(code, model);
+		for (int i=0; i<values.length; i++) {
+			assertEquals(values[i], decoder.decodeIndex(bit_source));
+		}
+	}
+
+	@Test
+	public void limitedCodeMapTest() {
+		long[] counts = fibonacciWeights(25);
+		IntAlphabetModel model = new IntAlphabetModel(0, counts);
+		int[] unlimited = HuffmanEncoder.createCodeLengthsFromModel(model, 1L << 32);
+
+		// A limit that doesn't bind keeps the Huffman lengths, one that
+		// binds uses the package-merge lengths.
+		int[] limits = { 24, 30, 12 };
+		for (int limit : limits) {
+			int[] expected = (limit >= maxLength(unlimited)) ? unlimited
+					: HuffmanEncoder.createCodeLengthsFromModel(model, 1L << 32, limit);
+			Map<Symbol, String> code_map = HuffmanEncoder.createCodeMapFromModel(model, 1L << 32, limit);
+			assertEquals(25, code_map.size());
+			for (int i=0; i<25; i++) {
+				assertEquals(expected[i], code_map.get(model.getByIndex(i).getSymbol()).length());
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSource;
+import io.InsufficientBitsLeftException;
+import models.SourceModel;
+import models.Symbol;
+
+public class InterleavedHuffmanDecoder implements SymbolDecoder {
+	static final int STREAMS = InterleavedHuffmanEncoder.STREAMS;
+	public static final int MAX_CODE_LENGTH = 31;
+
+	private HuffmanDecoder _decoder;
+	private SourceModel _model;
+
+	private int[] _words;
+	private int[] _decoded;
+	private int _decoded_count;
+	private int _decoded_position;
+
+	public InterleavedHuffmanDecoder(CanonicalHuffmanCode code, SourceModel m) {
+		checkLengths(code);
+		_decoder = new HuffmanDecoder(code, m);
+		_model = m;
+		_words = new int[0];
+		_decoded = new int[0];
+		_decoded_count = 0;
+		_decoded_position = 0;
+	}
+
+	/* checkLengths
+	 * Streams are decoded from 64 bit buffers holding at least 32
+	 * bits, and the total code length must fit the length field of
+	 * a table entry.
+	 */
+	static void checkLengths(CanonicalHuffmanCode code) {
+		for (int i=0; i<code.getSymbolCount(); i++) {
+			if (code.getLength(i) > MAX_CODE_LENGTH) {
+				throw new IllegalArgumentException("Interleaved codes can't be longer than " + MAX_CODE_LENGTH + " bits");
+			}
+		}
+	}
+
+//	@Override
+	public Symbol decode(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		return _model.getByIndex(decodeIndex(bit_source)).getSymbol();
+	}
+
+	/* decodeIndex
+	 * Decodes next symbol and returns its index in the source model.
+	 */
+	public int decodeIndex(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		if (_decoded_position == _decoded_count) {
+			readBlock(bit_source);
+		}
+		return _decoded[_decoded_position++];
+	}
+
+//	@Override
+	public void decode(BitSource bit_source, int[] out, int off, int len) throws InsufficientBitsLeftException, IOException {
+		while (len > 0) {
+			if (_decoded_position == _decoded_count) {
+				readBlock(bit_source);
+			}
+			int count = Math.min(len, _decoded_count - _decoded_position);
+			System.arraycopy(_decoded, _decoded_position, out, off, count);
+			_decoded_position += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	/* finishEntry
+	 * Follows entry through any secondary tables. Returns a leaf
+	 * entry whose length is the total length of the code, which is
+	 * below 32 bits for codes this decoder accepts.
+	 */
+	private static int finishEntry(int[] table, int entry, long buffer, int root_bits) {
+		int consumed = 0;
+		int bits = root_bits;
+		while (entry < 0) {
+			consumed += bits;
+			bits = entry & HuffmanDecoder.LENGTH_MASK;
+			entry = table[((entry & ~HuffmanDecoder.LINK_FLAG) >>> 5) + (int) ((buffer << consumed) >>> (64 - bits))];
+		}
+		return entry + consumed;
+	}
+
+	private void readBlock(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		int len = bit_source.next(32);
+		if (len <= 0) {
+			throw new RuntimeException("Corrupt block header");
+		}
+		int[] stream_lengths = new int[STREAMS];
+		for (int st=0; st<STREAMS; st++) {
+			stream_lengths[st] = bit_source.next(32);
+			if (stream_lengths[st] < 0 || stream_lengths[st] % 4 != 0) {
+				throw new RuntimeException("Corrupt block header");
+			}
+		}
+
+		int total_words = 0;
+		for (int st=0; st<STREAMS; st++) {
+			total_words += stream_lengths[st] / 4;
+		}
+		if (_words.length < total_words) {
+			_words = new int[total_words];
+		}
+		int[] words = _words;
+		for (int w=0; w<total_words; w++) {
+			words[w] = bit_source.next(32);
+		}
+		int p0 = 0;
+		int e0 = p0 + stream_lengths[0] / 4;
+		int p1 = e0;
+		int e1 = p1 + stream_lengths[1] / 4;
+		int p2 = e1;
+		int e2 = p2 + stream_lengths[2] / 4;
+		int p3 = e2;
+		int e3 = p3 + stream_lengths[3] / 4;
+
+		if (_decoded.length < len) {
+			_decoded = new int[len];
+		}
+		int[] decoded = _decoded;
+		int[] table = _decoder.getTable();
+		int root_bits = _decoder.getRootBits();
+		int root_shift = 64 - root_bits;
+
+		// Each stream keeps its own left aligned 64 bit buffer which is
+		// topped up to at least 32 bits, enough for any code, before
+		// every symbol. The four decodes of a round don't depend on each
+		// other so they can overlap in the CPU. Links to secondary tables
+		// are rare and handled by finishEntry().
+		long b0 = 0, b1 = 0, b2 = 0, b3 = 0;
+		int a0 = 0, a1 = 0, a2 = 0, a3 = 0;
+		int i = 0;
+		for (; i+STREAMS<=len; i+=STREAMS) {
+			if (a0 < 32) {
+				b0 |= (p0 < e0 ? ((long) words[p0++]) & 0xffffffffL : 0L) << (32 - a0);
+				a0 += 32;
+			}
+			if (a1 < 32) {
+				b1 |= (p1 < e1 ? ((long) words[p1++]) & 0xffffffffL : 0L) << (32 - a1);
+				a1 += 32;
+			}
+			if (a2 < 32) {
+				b2 |= (p2 < e2 ? ((long) words[p2++]) & 0xffffffffL : 0L) << (32 - a2);
+				a2 += 32;
+			}
+			if (a3 < 32) {
+				b3 |= (p3 < e3 ? ((long) words[p3++]) & 0xffffffffL : 0L) << (32 - a3);
+				a3 += 32;
+			}
+
+			int n0 = table[(int) (b0 >>> root_shift)];
+			int n1 = table[(int) (b1 >>> root_shift)];
+			int n2 = table[(int) (b2 >>> root_shift)];
+			int n3 = table[(int) (b3 >>> root_shift)];
+			if ((n0 | n1 | n2 | n3) < 0) {
+				n0 = finishEntry(table, n0, b0, root_bits);
+				n1 = finishEntry(table, n1, b1, root_bits);
+				n2 = finishEntry(table, n2, b2, root_bits);
+				n3 = finishEntry(table, n3, b3, root_bits);
+			}
+
+			int l0 = n0 & HuffmanDecoder.LENGTH_MASK;
+			int l1 = n1 & HuffmanDecoder.LENGTH_MASK;
+			int l2 = n2 & HuffmanDecoder.LENGTH_MASK;
+			int l3 = n3 & HuffmanDecoder.LENGTH_MASK;
+			b0 <<= l0;
+			b1 <<= l1;
+			b2 <<= l2;
+			b3 <<= l3;
+			a0 -= l0;
+			a1 -= l1;
+			a2 -= l2;
+			a3 -= l3;
+			decoded[i] = n0 >>> 5;
+			decoded[i+1] = n1 >>> 5;
+			decoded[i+2] = n2 >>> 5;
+			decoded[i+3] = n3 >>> 5;
+		}
+
+		// Last symbols of a block that don't fill a round.
+		long[] buffers = {b0, b1, b2, b3};
+		int[] available = {a0, a1, a2, a3};
+		int[] positions = {p0, p1, p2, p3};
+		int[] ends = {e0, e1, e2, e3};
+		for (int st=0; i<len; st++, i++) {
+			if (available[st] < 32) {
+				buffers[st] |= (positions[st] < ends[st] ? ((long) words[positions[st]++]) & 0xffffffffL : 0L) << (32 - available[st]);
+				available[st] += 32;
+			}
+			int n = finishEntry(table, table[(int) (buffers[st] >>> root_shift)], buffers[st], root_bits);
+			buffers[st] <<= n & HuffmanDecoder.LENGTH_MASK;
+			available[st] -= n & HuffmanDecoder.LENGTH_MASK;
+			decoded[i] = n >>> 5;
+		}
+		_decoded_count = len;
+		_decoded_position = 0;
+	}
+}
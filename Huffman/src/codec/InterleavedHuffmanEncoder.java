@@ -0,0 +1,179 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSink;
+import models.SourceModel;
+import models.Symbol;
+
+/* InterleavedHuffmanEncoder
+ * Huffman coding into STREAMS separate bit streams so that the
+ * decoder can work on several symbols at once instead of waiting
+ * for each code length to find the start of the next code.
+ * Symbols are collected into blocks and each block is written as:
+ *     symbol count (32 bits)
+ *     byte length of each stream (STREAMS x 32 bits)
+ *     stream 0, stream 1, ...
+ * Symbol i of a block goes into stream i % STREAMS. A stream that
+ * doesn't end on a word boundary is padded with zeros to the next
+ * one, so stream lengths are always a multiple of 4 bytes.
+ */
+public class InterleavedHuffmanEncoder implements SymbolEncoder {
+	public static final int STREAMS = 4;
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+	private CanonicalHuffmanCode _code;
+	private int[] _codes;
+	private byte[] _lengths;
+	private int _max_length;
+	private SourceModel _model;
+
+	private int[] _pending;
+	private int _pending_count;
+
+	/* Words of each stream of the block being written. _buffers hold
+	 * _available bits right aligned, always less than 32 between
+	 * codes, the same way BufferedBitSink does.
+	 */
+	private int[][] _words;
+	private int[] _word_counts;
+	private long[] _buffers;
+	private int[] _available;
+	private boolean _closed;
+
+	public InterleavedHuffmanEncoder(CanonicalHuffmanCode code, SourceModel m) {
+		this(code, m, DEFAULT_BLOCK_SIZE);
+	}
+
+	public InterleavedHuffmanEncoder(CanonicalHuffmanCode code, SourceModel m, int block_size) {
+		if (block_size < 1) {
+			throw new IllegalArgumentException("Block size must be positive");
+		}
+		InterleavedHuffmanDecoder.checkLengths(code);
+		_code = code;
+		_codes = new int[code.getSymbolCount()];
+		_lengths = new byte[code.getSymbolCount()];
+		_max_length = 0;
+		for (int i=0; i<_codes.length; i++) {
+			_codes[i] = code.getCode(i);
+			_lengths[i] = (byte) code.getLength(i);
+			_max_length = Math.max(_max_length, _lengths[i]);
+		}
+		_model = m;
+		_pending = new int[block_size];
+		_pending_count = 0;
+		_words = new int[STREAMS][0];
+		_word_counts = new int[STREAMS];
+		_buffers = new long[STREAMS];
+		_available = new int[STREAMS];
+		_closed = false;
+	}
+
+	public CanonicalHuffmanCode getCode() {
+		return _code;
+	}
+
+//	@Override
+	public void encode(Symbol s, BitSink out) throws IOException {
+		encode(_model.getIndex(s), out);
+	}
+
+	/* encode
+	 * Encodes symbol by its index in the source model.
+	 */
+	public void encode(int symbol_index, BitSink out) throws IOException {
+		if (_closed) {
+			throw new RuntimeException("Attempt to encode symbol on closed encoder");
+		}
+		if (_lengths[symbol_index] == 0) {
+			throw new RuntimeException("Symbol not in code map");
+		}
+		_pending[_pending_count++] = symbol_index;
+		if (_pending_count == _pending.length) {
+			writeBlock(out);
+		}
+	}
+
+//	@Override
+	public void encode(int[] symbols, int off, int len, BitSink out) throws IOException {
+		if (_closed) {
+			throw new RuntimeException("Attempt to encode symbol on closed encoder");
+		}
+		byte[] lengths = _lengths;
+		while (len > 0) {
+			int count = Math.min(len, _pending.length - _pending_count);
+			for (int i=off; i<off+count; i++) {
+				if (lengths[symbols[i]] == 0) {
+					throw new RuntimeException("Symbol not in code map");
+				}
+			}
+			System.arraycopy(symbols, off, _pending, _pending_count, count);
+			_pending_count += count;
+			if (_pending_count == _pending.length) {
+				writeBlock(out);
+			}
+			off += count;
+			len -= count;
+		}
+	}
+
+//	@Override
+	public void close(BitSink out) throws IOException {
+		if (!_closed) {
+			if (_pending_count > 0) {
+				writeBlock(out);
+			}
+			_closed = true;
+			out.padToWord();
+		}
+	}
+
+	private void writeBlock(BitSink out) throws IOException {
+		// Enough words for the longest possible stream of this block,
+		// so append() never has to check.
+		int capacity = (((_pending_count + STREAMS - 1) / STREAMS) * _max_length + 31) / 32;
+		for (int st=0; st<STREAMS; st++) {
+			if (_words[st].length < capacity) {
+				_words[st] = new int[capacity];
+			}
+			_word_counts[st] = 0;
+			_buffers[st] = 0;
+			_available[st] = 0;
+		}
+
+		for (int i=0; i<_pending_count; i++) {
+			int s = _pending[i];
+			append(i % STREAMS, _codes[s], _lengths[s]);
+		}
+
+		out.write(_pending_count, 32);
+		for (int st=0; st<STREAMS; st++) {
+			if (_available[st] > 0) {
+				append(st, 0, 32 - _available[st]);
+			}
+			out.write(4 * _word_counts[st], 32);
+		}
+		for (int st=0; st<STREAMS; st++) {
+			int[] words = _words[st];
+			for (int w=0; w<_word_counts[st]; w++) {
+				out.write(words[w], 32);
+			}
+		}
+		_pending_count = 0;
+	}
+
+	/* append
+	 * Adds the low order length bits of bits to stream st, length
+	 * between 1 and 32.
+	 */
+	private void append(int st, int bits, int length) {
+		long buffer = (_buffers[st] << length) | (((long) bits) & (0xffffffffL >>> (32 - length)));
+		int available = _available[st] + length;
+		if (available >= 32) {
+			available -= 32;
+			_words[st][_word_counts[st]++] = (int) (buffer >>> available);
+		}
+		_buffers[st] = buffer;
+		_available[st] = available;
+	}
+}
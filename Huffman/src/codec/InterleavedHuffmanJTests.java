@@ -0,0 +1,147 @@
+package codec;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+import io.BitSink;
+import io.BitSource;
+import io.BufferedBitSink;
+import io.InputStreamBitSource;
+import io.InsufficientBitsLeftException;
+import models.Unsigned8BitModel;
+
+public class InterleavedHuffmanJTests {
+
+	private static int[] skewedValues(int count, long seed) {
+		Random random = new Random(seed);
+		int[] values = new int[count];
+		for (int i=0; i<count; i++) {
+			values[i] = Math.min(255, (int) (-6 * Math.log(1.0 - random.nextDouble())));
+		}
+		return values;
+	}
+
+	/* fixedLengthCode
+	 * All 256 symbols with 8 bit codes.
+	 */
+	private static CanonicalHuffmanCode fixedLengthCode() {
+		int[] lengths = new int[256];
+		for (int i=0; i<256; i++) {
+			lengths[i] = 8;
+		}
+		return new CanonicalHuffmanCode(lengths);
+	}
+
+	/* longCode
+	 * Symbol i has an i+1 bit code up to 30 bits, so most codes need
+	 * the decoder's secondary tables.
+	 */
+	private static CanonicalHuffmanCode longCode() {
+		int[] lengths = new int[256];
+		for (int i=0; i<30; i++) {
+			lengths[i] = i + 1;
+		}
+		lengths[30] = 30;
+		return new CanonicalHuffmanCode(lengths);
+	}
+
+	private static byte[] encode(CanonicalHuffmanCode code, int[] values, int block_size) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		InterleavedHuffmanEncoder encoder = new InterleavedHuffmanEncoder(code, new Unsigned8BitModel(), block_size);
+		encoder.encode(values, 0, values.length, bit_sink);
+		encoder.close(bit_sink);
+		return out.toByteArray();
+	}
+
+	private static void assertRoundTrip(CanonicalHuffmanCode code, int[] values, int block_size)
+			throws IOException, InsufficientBitsLeftException {
+		byte[] bytes = encode(code, values, block_size);
+
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+		InterleavedHuffmanDecoder decoder = new InterleavedHuffmanDecoder(code, new Unsigned8BitModel());
+		for (int i=0; i<values.length; i++) {
+			assertEquals(values[i], decoder.decodeIndex(bit_source));
+		}
+
+		bit_source = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+		decoder = new InterleavedHuffmanDecoder(code, new Unsigned8BitModel());
+		int[] decoded = new int[values.length];
+		for (int off=0; off<values.length; off+=37) {
+			decoder.decode(bit_source, decoded, off, Math.min(37, values.length - off));
+		}
+		assertArrayEquals(values, decoded);
+	}
+
+	@Test
+	public void skewedRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		int[] values = skewedValues(100003, 590);
+		Unsigned8BitModel model = new Unsigned8BitModel();
+		for (int v : values) {
+			model.train(v);
+		}
+		CanonicalHuffmanCode code = CanonicalHuffmanCode.fromModel(model, 1L << 32, InterleavedHuffmanDecoder.MAX_CODE_LENGTH);
+		assertRoundTrip(code, values, InterleavedHuffmanEncoder.DEFAULT_BLOCK_SIZE);
+		assertRoundTrip(code, values, 1001);
+	}
+
+	@Test
+	public void longCodesRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		Random random = new Random(591);
+		int[] values = new int[20003];
+		for (int i=0; i<values.length; i++) {
+			values[i] = random.nextInt(31);
+		}
+		assertRoundTrip(longCode(), values, InterleavedHuffmanEncoder.DEFAULT_BLOCK_SIZE);
+		assertRoundTrip(longCode(), values, 7);
+	}
+
+	@Test
+	public void shortBlocksTest() throws IOException, InsufficientBitsLeftException {
+		// Blocks of fewer than STREAMS symbols leave some streams empty.
+		int[] all = skewedValues(64, 592);
+		for (int len=1; len<=2*InterleavedHuffmanEncoder.STREAMS+1; len++) {
+			int[] values = new int[len];
+			System.arraycopy(all, 0, values, 0, len);
+			for (int block_size=1; block_size<=len+1; block_size++) {
+				assertRoundTrip(fixedLengthCode(), values, block_size);
+				assertRoundTrip(longCode(), new int[len], block_size);
+			}
+		}
+	}
+
+	@Test
+	public void emptyStreamsTest() throws IOException {
+		// One symbol: streams 1 to 3 are empty and take no words.
+		byte[] bytes = encode(fixedLengthCode(), new int[] { 0xab }, 1);
+		byte[] expected = {
+			0, 0, 0, 1,
+			0, 0, 0, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			(byte) 0xab, 0, 0, 0,
+			0, 0, 0, 0 };
+		assertArrayEquals(expected, bytes);
+	}
+
+	@Test
+	public void alignedStreamsTest() throws IOException, InsufficientBitsLeftException {
+		// 16 symbols of 8 bits put exactly one word in each stream, which
+		// needs no padding.
+		int[] values = new int[16];
+		for (int i=0; i<16; i++) {
+			values[i] = i;
+		}
+		byte[] bytes = encode(fixedLengthCode(), values, 16);
+		// Header, four one word streams and the final padding word.
+		assertEquals(4 + 4 * 4 + 4 * 4 + 4, bytes.length);
+		for (int st=0; st<InterleavedHuffmanEncoder.STREAMS; st++) {
+			assertEquals(4, bytes[4 + 4 * st + 3]);
+		}
+		assertRoundTrip(fixedLengthCode(), values, 16);
+		assertRoundTrip(fixedLengthCode(), values, 8);
+	}
+}
@@ -0,0 +1,176 @@
+package codec;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+import io.BitSink;
+import io.BitSource;
+import io.BufferedBitSink;
+import io.InputStreamBitSource;
+import io.InsufficientBitsLeftException;
+import models.AdaptiveModel;
+import models.CumulativeSourceModel;
+import models.Unsigned8BitModel;
+
+public class RangeCoderJTests {
+
+	private static int[] skewedValues(int count, long seed) {
+		Random random = new Random(seed);
+		int[] values = new int[count];
+		for (int i=0; i<count; i++) {
+			values[i] = Math.min(255, (int) (-6 * Math.log(1.0 - random.nextDouble())));
+		}
+		return values;
+	}
+
+	private static Unsigned8BitModel trainedModel(int[] values) {
+		Unsigned8BitModel model = new Unsigned8BitModel();
+		for (int v : values) {
+			model.train(v);
+		}
+		return model;
+	}
+
+	@Test
+	public void roundTripTest() throws IOException, InsufficientBitsLeftException {
+		int[] values = skewedValues(100000, 590);
+		Unsigned8BitModel model = trainedModel(values).normalize(16);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		RangeEncoder encoder = new RangeEncoder(model);
+		for (int v : values) {
+			encoder.encode(model.getByIndex(v).getSymbol(), bit_sink);
+		}
+		encoder.close(bit_sink);
+
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(out.toByteArray()));
+		RangeDecoder decoder = new RangeDecoder(model);
+		for (int i=0; i<values.length; i++) {
+			assertEquals(values[i], model.getIndex(decoder.decode(bit_source)));
+		}
+	}
+
+	@Test
+	public void nonPowerOfTwoTotalTest() throws IOException, InsufficientBitsLeftException {
+		int[] values = skewedValues(20000, 80);
+		Unsigned8BitModel model = trainedModel(values);
+		assertTrue(model.getTotal() <= RangeEncoder.MAX_TOTAL);
+		assertEquals(-1, model.getTotalBits());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		RangeEncoder encoder = new RangeEncoder(model);
+		for (int v : values) {
+			encoder.encode(v, bit_sink);
+		}
+		encoder.close(bit_sink);
+
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(out.toByteArray()));
+		RangeDecoder decoder = new RangeDecoder(model);
+		for (int i=0; i<values.length; i++) {
+			assertEquals(values[i], decoder.decodeIndex(bit_source));
+		}
+	}
+
+	@Test
+	public void carryPropagationTest() throws IOException, InsufficientBitsLeftException {
+		// A symbol at the very top of the range drives _low towards
+		// 0xff.. runs, which forces carries through the cache.
+		long[] counts = new long[256];
+		counts[0] = 1;
+		counts[255] = 65535;
+		Unsigned8BitModel model = new Unsigned8BitModel(counts);
+		Random random = new Random(7);
+		int[] values = new int[50000];
+		for (int i=0; i<values.length; i++) {
+			values[i] = (random.nextInt(1000) == 0) ? 0 : 255;
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		RangeEncoder encoder = new RangeEncoder(model);
+		for (int v : values) {
+			encoder.encode(v, bit_sink);
+		}
+		encoder.close(bit_sink);
+
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(out.toByteArray()));
+		RangeDecoder decoder = new RangeDecoder(model);
+		for (int i=0; i<values.length; i++) {
+			assertEquals(values[i], decoder.decodeIndex(bit_source));
+		}
+	}
+
+	/* assertBlocksMatchSymbols
+	 * Coding values in blocks must give the same bytes and symbols as
+	 * coding them one at a time. Models come from make, since
+	 * adaptive models change while coding.
+	 */
+	private static void assertBlocksMatchSymbols(int[] values, ModelFactory make)
+			throws IOException, InsufficientBitsLeftException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(expected);
+		RangeEncoder encoder = new RangeEncoder(make.create());
+		for (int v : values) {
+			encoder.encode(v, bit_sink);
+		}
+		encoder.close(bit_sink);
+
+		// Uneven block lengths, including empty ones.
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		bit_sink = new BufferedBitSink(actual);
+		encoder = new RangeEncoder(make.create());
+		Random random = new Random(values.length);
+		for (int off=0; off<values.length; ) {
+			int len = Math.min(values.length - off, random.nextInt(1000));
+			encoder.encode(values, off, len, bit_sink);
+			off += len;
+		}
+		encoder.close(bit_sink);
+		assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(actual.toByteArray()));
+		RangeDecoder decoder = new RangeDecoder(make.create());
+		int[] decoded = new int[values.length];
+		for (int off=0; off<values.length; ) {
+			int len = Math.min(values.length - off, random.nextInt(1000));
+			decoder.decode(bit_source, decoded, off, len);
+			off += len;
+		}
+		assertArrayEquals(values, decoded);
+	}
+
+	private interface ModelFactory {
+		CumulativeSourceModel create();
+	}
+
+	@Test
+	public void blockTest() throws IOException, InsufficientBitsLeftException {
+		int[] values = skewedValues(100000, 591);
+		final Unsigned8BitModel normalized = trainedModel(values).normalize(16);
+		assertBlocksMatchSymbols(values, new ModelFactory() {
+			public CumulativeSourceModel create() {
+				return normalized;
+			}
+		});
+		// Trained on fewer values to keep the total below MAX_TOTAL.
+		final Unsigned8BitModel trained = trainedModel(skewedValues(20000, 592));
+		assertEquals(-1, trained.getTotalBits());
+		assertBlocksMatchSymbols(values, new ModelFactory() {
+			public CumulativeSourceModel create() {
+				return trained;
+			}
+		});
+		assertBlocksMatchSymbols(values, new ModelFactory() {
+			public CumulativeSourceModel create() {
+				return new AdaptiveModel(256);
+			}
+		});
+	}
+}
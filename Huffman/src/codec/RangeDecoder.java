@@ -0,0 +1,118 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSource;
+import io.InsufficientBitsLeftException;
+import models.AdaptiveSourceModel;
+import models.CumulativeSourceModel;
+import models.Symbol;
+
+public class RangeDecoder extends ByteRangeDecoder {
+
+	private CumulativeSourceModel _model;
+
+	public RangeDecoder(CumulativeSourceModel m) {
+		_model = m;
+	}
+
+	public CumulativeSourceModel model() {
+		return _model;
+	}
+
+	public void model(CumulativeSourceModel m) {
+		_model = m;
+	}
+
+//	@Override
+	public Symbol decode(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		if (_model == null) {
+			throw new RuntimeException("No source model installed");
+		}
+		return _model.getByIndex(decodeIndex(bit_source)).getSymbol();
+	}
+
+	/* decodeIndex
+	 * Decodes next symbol and returns its index in the source model.
+	 */
+	public int decodeIndex(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		if (_model == null) {
+			throw new RuntimeException("No source model installed");
+		}
+		start(bit_source);
+
+		long r = scaledRange();
+		long target = _code / r;
+		long total = _model.getTotal();
+		if (target >= total) {
+			throw new RuntimeException("Range error. This should never happen");
+		}
+
+		int symbol_index = _model.findIndex(target);
+		_code -= r * _model.getCumulative(symbol_index);
+		_range = r * _model.getCount(symbol_index);
+		if (_model instanceof AdaptiveSourceModel) {
+			((AdaptiveSourceModel) _model).update(symbol_index);
+		}
+
+		renormalize(bit_source);
+		return symbol_index;
+	}
+
+	/* decode
+	 * Block version of decodeIndex() that keeps _code and _range in
+	 * locals for the whole block.
+	 */
+//	@Override
+	public void decode(BitSource bit_source, int[] out, int off, int len) throws InsufficientBitsLeftException, IOException {
+		if (len <= 0) {
+			return;
+		}
+		if (_model == null) {
+			throw new RuntimeException("No source model installed");
+		}
+		start(bit_source);
+
+		CumulativeSourceModel m = _model;
+		AdaptiveSourceModel adaptive = (m instanceof AdaptiveSourceModel) ? (AdaptiveSourceModel) m : null;
+		int total_bits = RangeEncoder.totalBits(m);
+		long total = m.getTotal();
+		long code = _code;
+		long range = _range;
+
+		for (int n=off; n<off+len; n++) {
+			long r = (total_bits >= 0) ? range >>> total_bits : range / total;
+			long target = code / r;
+			if (target >= total) {
+				_code = code;
+				_range = range;
+				throw new RuntimeException("Range error. This should never happen");
+			}
+
+			int symbol_index = m.findIndex(target);
+			code -= r * m.getCumulative(symbol_index);
+			range = r * m.getCount(symbol_index);
+			if (adaptive != null) {
+				adaptive.update(symbol_index);
+				total_bits = RangeEncoder.totalBits(m);
+				total = m.getTotal();
+			}
+
+			while (range < TOP) {
+				code = shiftIn(code, bit_source);
+				range <<= 8;
+			}
+			out[n] = symbol_index;
+		}
+		_code = code;
+		_range = range;
+	}
+
+	private long scaledRange() {
+		int total_bits = RangeEncoder.totalBits(_model);
+		if (total_bits >= 0) {
+			return _range >>> total_bits;
+		}
+		return _range / _model.getTotal();
+	}
+}
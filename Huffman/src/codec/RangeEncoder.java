@@ -0,0 +1,151 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSink;
+import models.AdaptiveSourceModel;
+import models.CumulativeSourceModel;
+import models.Symbol;
+
+/* RangeEncoder
+ * Byte oriented range coder in the style of Subbotin and LZMA.
+ * The interval is renormalized a byte at a time and carries are
+ * propagated through a cached byte followed by a run of pending
+ * 0xff bytes. Model totals must not exceed MAX_TOTAL, which a
+ * normalized model (Unsigned8BitModel.normalize(16)) or an
+ * AdaptiveModel with its default maximum total guarantees.
+ */
+public class RangeEncoder extends ByteRangeEncoder {
+	static final long MAX_TOTAL = 1L << 16;
+
+	private CumulativeSourceModel _model;
+	private boolean _closed;
+
+	public RangeEncoder(CumulativeSourceModel m) {
+		_model = m;
+		_closed = false;
+	}
+
+	public CumulativeSourceModel model() {
+		return _model;
+	}
+
+	public void model(CumulativeSourceModel m) {
+		_model = m;
+	}
+
+//	@Override
+	public void encode(Symbol s, BitSink out) throws IOException {
+		if (_model == null) {
+			throw new RuntimeException("No source model installed");
+		}
+		encode(_model.getIndex(s), out);
+	}
+
+	/* encode
+	 * Encodes symbol by its index in the source model.
+	 */
+	public void encode(int symbol_index, BitSink out) throws IOException {
+		if (_model == null) {
+			throw new RuntimeException("No source model installed");
+		}
+		if (_closed) {
+			throw new RuntimeException("Range encoder already closed");
+		}
+
+		long count = _model.getCount(symbol_index);
+		if (count == 0) {
+			throw new RuntimeException("Symbol to be encoded has zero probability in symbol model.");
+		}
+
+		long r = scaledRange();
+		_low += r * _model.getCumulative(symbol_index);
+		_range = r * count;
+		if (_model instanceof AdaptiveSourceModel) {
+			((AdaptiveSourceModel) _model).update(symbol_index);
+		}
+
+		renormalize(out);
+	}
+
+	/* encode
+	 * Block version of encode(int, BitSink) that keeps _low and
+	 * _range in locals for the whole block.
+	 */
+//	@Override
+	public void encode(int[] symbols, int off, int len, BitSink out) throws IOException {
+		if (_model == null) {
+			throw new RuntimeException("No source model installed");
+		}
+		if (_closed) {
+			throw new RuntimeException("Range encoder already closed");
+		}
+
+		CumulativeSourceModel m = _model;
+		AdaptiveSourceModel adaptive = (m instanceof AdaptiveSourceModel) ? (AdaptiveSourceModel) m : null;
+		int total_bits = totalBits(m);
+		long total = m.getTotal();
+		long low = _low;
+		long range = _range;
+
+		for (int n=off; n<off+len; n++) {
+			int i = symbols[n];
+			long count = m.getCount(i);
+			if (count == 0) {
+				_low = low;
+				_range = range;
+				throw new RuntimeException("Symbol to be encoded has zero probability in symbol model.");
+			}
+			long r = (total_bits >= 0) ? range >>> total_bits : range / total;
+			low += r * m.getCumulative(i);
+			range = r * count;
+			if (adaptive != null) {
+				adaptive.update(i);
+				total_bits = totalBits(m);
+				total = m.getTotal();
+			}
+
+			while (range < TOP) {
+				range <<= 8;
+				low = shiftLow(low, out);
+			}
+		}
+		_low = low;
+		_range = range;
+	}
+
+//	@Override
+	public void close(BitSink out) throws IOException {
+		if (!_closed) {
+			_closed = true;
+			flush(out);
+		}
+	}
+
+	/* scaledRange
+	 * Size of one count of the model within the current range.
+	 */
+	private long scaledRange() {
+		int total_bits = totalBits(_model);
+		if (total_bits >= 0) {
+			return _range >>> total_bits;
+		}
+		return _range / _model.getTotal();
+	}
+
+	/* totalBits
+	 * Shift that divides by the model total if that is a power of
+	 * two of at most 2^16, otherwise -1. Rejects totals above
+	 * MAX_TOTAL.
+	 */
+	static int totalBits(CumulativeSourceModel m) {
+		int total_bits = m.getTotalBits();
+		if (total_bits >= 0 && total_bits <= 16) {
+			return total_bits;
+		}
+		if (m.getTotal() > MAX_TOTAL) {
+			throw new RuntimeException("Model total too large for range coder. Normalize model first.");
+		}
+		return -1;
+	}
+}
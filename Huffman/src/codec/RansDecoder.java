@@ -0,0 +1,152 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSource;
+import io.InsufficientBitsLeftException;
+import models.CumulativeSourceModel;
+import models.Symbol;
+
+public class RansDecoder implements SymbolDecoder {
+	static final long RANS_L = RansEncoder.RANS_L;
+
+	private CumulativeSourceModel _model;
+	private int _scale_bits;
+	private int[] _freqs;
+	private int[] _cums;
+	private short[] _slot_symbols;
+	private int _streams;
+
+	private int[] _decoded;
+	private int _decoded_count;
+	private int _decoded_position;
+	private byte[] _bytes;
+	private long[] _states;
+
+	public RansDecoder(CumulativeSourceModel m) {
+		this(m, RansEncoder.DEFAULT_STREAMS);
+	}
+
+	/* RansDecoder
+	 * Number of streams must match the encoder's. Block size is
+	 * read from the stream.
+	 */
+	public RansDecoder(CumulativeSourceModel m, int streams) {
+		if (streams < 1 || streams > RansEncoder.MAX_STREAMS) {
+			throw new IllegalArgumentException("Number of streams must be between 1 and " + RansEncoder.MAX_STREAMS);
+		}
+		if (m.getSymbolCount() > 1 << 16) {
+			throw new IllegalArgumentException("rANS decoder supports at most 2^16 symbols");
+		}
+		_model = m;
+		_scale_bits = RansEncoder.scaleBits(m);
+		_freqs = new int[m.getSymbolCount()];
+		_cums = new int[m.getSymbolCount()];
+		_slot_symbols = new short[1 << _scale_bits];
+		for (int i=0; i<_freqs.length; i++) {
+			_freqs[i] = (int) m.getCount(i);
+			_cums[i] = (int) m.getCumulative(i);
+			for (int slot=_cums[i]; slot<_cums[i]+_freqs[i]; slot++) {
+				_slot_symbols[slot] = (short) i;
+			}
+		}
+		_streams = streams;
+		_decoded = new int[0];
+		_decoded_count = 0;
+		_decoded_position = 0;
+		_bytes = new byte[0];
+		_states = new long[streams];
+	}
+
+	public CumulativeSourceModel model() {
+		return _model;
+	}
+
+//	@Override
+	public Symbol decode(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		return _model.getByIndex(decodeIndex(bit_source)).getSymbol();
+	}
+
+	/* decodeIndex
+	 * Decodes next symbol and returns its index in the source model.
+	 */
+	public int decodeIndex(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		if (_decoded_position == _decoded_count) {
+			readBlock(bit_source);
+		}
+		return _decoded[_decoded_position++];
+	}
+
+	/* decode
+	 * Decodes len symbol indices into out starting at out[off].
+	 */
+	public void decode(BitSource bit_source, int[] out, int off, int len) throws InsufficientBitsLeftException, IOException {
+		while (len > 0) {
+			if (_decoded_position == _decoded_count) {
+				readBlock(bit_source);
+			}
+			int count = Math.min(len, _decoded_count - _decoded_position);
+			System.arraycopy(_decoded, _decoded_position, out, off, count);
+			_decoded_position += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	private void readBlock(BitSource bit_source) throws InsufficientBitsLeftException, IOException {
+		int len = bit_source.next(32);
+		int byte_count = bit_source.next(32);
+		if (len <= 0 || byte_count < 4 * _streams) {
+			throw new RuntimeException("Corrupt rANS block header");
+		}
+		if (_bytes.length < byte_count) {
+			_bytes = new byte[byte_count];
+		}
+		if (_decoded.length < len) {
+			_decoded = new int[len];
+		}
+
+		int end = byte_count - (byte_count % 4);
+		int position = 0;
+		for (; position<end; position+=4) {
+			int word = bit_source.next(32);
+			_bytes[position] = (byte) (word >>> 24);
+			_bytes[position+1] = (byte) (word >>> 16);
+			_bytes[position+2] = (byte) (word >>> 8);
+			_bytes[position+3] = (byte) word;
+		}
+		for (; position<byte_count; position++) {
+			_bytes[position] = (byte) bit_source.next(8);
+		}
+
+		position = 0;
+		for (int st=0; st<_streams; st++) {
+			long x = 0;
+			for (int b=0; b<4; b++) {
+				x = (x << 8) | (_bytes[position++] & 0xff);
+			}
+			_states[st] = x;
+		}
+
+		int scale_bits = _scale_bits;
+		long mask = (1L << scale_bits) - 1;
+		byte[] bytes = _bytes;
+		int[] decoded = _decoded;
+		int i = 0;
+		while (i < len) {
+			for (int st=0; st<_streams && i<len; st++, i++) {
+				long x = _states[st];
+				int slot = (int) (x & mask);
+				int s = _slot_symbols[slot] & 0xffff;
+				x = _freqs[s] * (x >>> scale_bits) + slot - _cums[s];
+				while (x < RANS_L) {
+					x = (x << 8) | (bytes[position++] & 0xff);
+				}
+				_states[st] = x;
+				decoded[i] = s;
+			}
+		}
+		_decoded_count = len;
+		_decoded_position = 0;
+	}
+}
@@ -0,0 +1,176 @@
+package codec;
+
+import java.io.IOException;
+
+import io.BitSink;
+import models.CumulativeSourceModel;
+import models.Symbol;
+
+/* RansEncoder
+ * Range asymmetric numeral system coder with up to MAX_STREAMS
+ * interleaved states. rANS encodes in reverse, so symbols are
+ * collected into blocks of block_size symbols and each block is
+ * written as:
+ *     symbol count (32 bits), byte count (32 bits), bytes
+ * Symbol i of a block is coded with state i % streams, which lets
+ * the decoder work on independent dependency chains.
+ * The model must be normalized to a power of two total of at most
+ * 2^MAX_SCALE_BITS, e.g. with Unsigned8BitModel.normalize(), and
+ * must not change while in use.
+ */
+public class RansEncoder implements SymbolEncoder {
+	public static final int DEFAULT_STREAMS = 4;
+	public static final int MAX_STREAMS = 4;
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+	static final int MAX_SCALE_BITS = 16;
+	static final long RANS_L = 1L << 23;
+
+	private CumulativeSourceModel _model;
+	private int _scale_bits;
+	private int[] _freqs;
+	private int[] _cums;
+	private int _streams;
+
+	private int[] _pending;
+	private int _pending_count;
+	private byte[] _bytes;
+	private long[] _states;
+	private boolean _closed;
+
+	public RansEncoder(CumulativeSourceModel m) {
+		this(m, DEFAULT_STREAMS, DEFAULT_BLOCK_SIZE);
+	}
+
+	public RansEncoder(CumulativeSourceModel m, int streams, int block_size) {
+		if (streams < 1 || streams > MAX_STREAMS) {
+			throw new IllegalArgumentException("Number of streams must be between 1 and " + MAX_STREAMS);
+		}
+		if (block_size < 1) {
+			throw new IllegalArgumentException("Block size must be positive");
+		}
+		_model = m;
+		_scale_bits = scaleBits(m);
+		_freqs = new int[m.getSymbolCount()];
+		_cums = new int[m.getSymbolCount()];
+		for (int i=0; i<_freqs.length; i++) {
+			_freqs[i] = (int) m.getCount(i);
+			_cums[i] = (int) m.getCumulative(i);
+		}
+		_streams = streams;
+		_pending = new int[block_size];
+		_pending_count = 0;
+		_bytes = new byte[0];
+		_states = new long[streams];
+		_closed = false;
+	}
+
+	static int scaleBits(CumulativeSourceModel m) {
+		int bits = m.getTotalBits();
+		if (bits < 1 || bits > MAX_SCALE_BITS) {
+			throw new RuntimeException("rANS needs a model normalized to a power of two total of at most 2^" + MAX_SCALE_BITS);
+		}
+		return bits;
+	}
+
+	public CumulativeSourceModel model() {
+		return _model;
+	}
+
+//	@Override
+	public void encode(Symbol s, BitSink out) throws IOException {
+		encode(_model.getIndex(s), out);
+	}
+
+	/* encode
+	 * Encodes symbol by its index in the source model.
+	 */
+	public void encode(int symbol_index, BitSink out) throws IOException {
+		if (_closed) {
+			throw new RuntimeException("rANS encoder already closed");
+		}
+		if (_freqs[symbol_index] == 0) {
+			throw new RuntimeException("Symbol to be encoded has zero probability in symbol model.");
+		}
+		_pending[_pending_count++] = symbol_index;
+		if (_pending_count == _pending.length) {
+			writeBlock(_pending, 0, _pending_count, out);
+			_pending_count = 0;
+		}
+	}
+
+	/* encode
+	 * Encodes len symbol indices starting at symbols[off].
+	 */
+	public void encode(int[] symbols, int off, int len, BitSink out) throws IOException {
+		while (len > 0) {
+			int count = Math.min(len, _pending.length - _pending_count);
+			for (int i=0; i<count; i++) {
+				encode(symbols[off+i], out);
+			}
+			off += count;
+			len -= count;
+		}
+	}
+
+//	@Override
+	public void close(BitSink out) throws IOException {
+		if (!_closed) {
+			if (_pending_count > 0) {
+				writeBlock(_pending, 0, _pending_count, out);
+				_pending_count = 0;
+			}
+			_closed = true;
+			out.padToWord();
+		}
+	}
+
+	private void writeBlock(int[] symbols, int off, int len, BitSink out) throws IOException {
+		// Each symbol emits at most two bytes with scale bits <= 16.
+		int capacity = 2 * len + 4 * _streams;
+		if (_bytes.length < capacity) {
+			_bytes = new byte[capacity];
+		}
+		int position = capacity;
+		int scale_bits = _scale_bits;
+		long x_max_base = (RANS_L >>> scale_bits) << 8;
+
+		for (int st=0; st<_streams; st++) {
+			_states[st] = RANS_L;
+		}
+
+		for (int i=len-1; i>=0; i--) {
+			int s = symbols[off+i];
+			int st = i % _streams;
+			long x = _states[st];
+			long freq = _freqs[s];
+			long x_max = x_max_base * freq;
+			while (x >= x_max) {
+				_bytes[--position] = (byte) x;
+				x >>>= 8;
+			}
+			_states[st] = ((x / freq) << scale_bits) + (x % freq) + _cums[s];
+		}
+
+		for (int st=_streams-1; st>=0; st--) {
+			long x = _states[st];
+			_bytes[--position] = (byte) x;
+			_bytes[--position] = (byte) (x >>> 8);
+			_bytes[--position] = (byte) (x >>> 16);
+			_bytes[--position] = (byte) (x >>> 24);
+		}
+
+		int byte_count = capacity - position;
+		out.write(len, 32);
+		out.write(byte_count, 32);
+		int end = capacity - (byte_count % 4);
+		for (; position<end; position+=4) {
+			out.write(((_bytes[position] & 0xff) << 24) |
+					((_bytes[position+1] & 0xff) << 16) |
+					((_bytes[position+2] & 0xff) << 8) |
+					(_bytes[position+3] & 0xff), 32);
+		}
+		for (; position<capacity; position++) {
+			out.write(_bytes[position] & 0xff, 8);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package codec;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+import io.BitSink;
+import io.BitSource;
+import io.BufferedBitSink;
+import io.InputStreamBitSource;
+import io.InsufficientBitsLeftException;
+import models.Unsigned8BitModel;
+
+public class RansJTests {
+
+	private static int[] randomValues(int count, long seed) {
+		Random random = new Random(seed);
+		int[] values = new int[count];
+		for (int i=0; i<count; i++) {
+			values[i] = random.nextInt(256);
+		}
+		return values;
+	}
+
+	private static int[] skewedValues(int count, long seed) {
+		Random random = new Random(seed);
+		int[] values = new int[count];
+		for (int i=0; i<count; i++) {
+			values[i] = Math.min(255, (int) (-2 * Math.log(1.0 - random.nextDouble())));
+		}
+		return values;
+	}
+
+	/* normalizedModel
+	 * Model trained on values, normalized to a 2^16 total for rANS.
+	 * Every value gets a count, so any input can be coded.
+	 */
+	private static Unsigned8BitModel normalizedModel(int[] values) {
+		Unsigned8BitModel model = new Unsigned8BitModel();
+		for (int v : values) {
+			model.train(v);
+		}
+		return model.normalize(16);
+	}
+
+	private static byte[] encode(Unsigned8BitModel model, int[] values, int streams, int block_size) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		RansEncoder encoder = new RansEncoder(model, streams, block_size);
+		encoder.encode(values, 0, values.length, bit_sink);
+		encoder.close(bit_sink);
+		return out.toByteArray();
+	}
+
+	private static void assertRoundTrip(Unsigned8BitModel model, int[] values, int streams, int block_size)
+			throws IOException, InsufficientBitsLeftException {
+		byte[] bytes = encode(model, values, streams, block_size);
+
+		// One symbol at a time.
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+		RansDecoder decoder = new RansDecoder(model, streams);
+		for (int i=0; i<values.length; i++) {
+			assertEquals(values[i], decoder.decodeIndex(bit_source));
+		}
+
+		// In bulk, with runs that straddle block boundaries.
+		bit_source = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+		decoder = new RansDecoder(model, streams);
+		int[] decoded = new int[values.length];
+		for (int off=0; off<values.length; off+=37) {
+			decoder.decode(bit_source, decoded, off, Math.min(37, values.length - off));
+		}
+		assertArrayEquals(values, decoded);
+	}
+
+	@Test
+	public void randomRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		int[] values = randomValues(100003, 590);
+		Unsigned8BitModel model = normalizedModel(values);
+		for (int streams=1; streams<=RansEncoder.MAX_STREAMS; streams++) {
+			assertRoundTrip(model, values, streams, RansEncoder.DEFAULT_BLOCK_SIZE);
+			assertRoundTrip(model, values, streams, 1001);
+		}
+	}
+
+	@Test
+	public void skewedRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		int[] values = skewedValues(100003, 591);
+		Unsigned8BitModel model = normalizedModel(values);
+		for (int streams=1; streams<=RansEncoder.MAX_STREAMS; streams++) {
+			assertRoundTrip(model, values, streams, RansEncoder.DEFAULT_BLOCK_SIZE);
+			assertRoundTrip(model, values, streams, 1001);
+		}
+
+		// A skewed source should code well under 8 bits per symbol.
+		assertTrue(encode(model, values, RansEncoder.DEFAULT_STREAMS, RansEncoder.DEFAULT_BLOCK_SIZE).length < values.length / 2);
+	}
+
+	@Test
+	public void singleValueRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		// Almost all of the 2^16 total on one symbol, so states grow
+		// slowly and most symbols emit no bytes.
+		int[] values = new int[50001];
+		values[25000] = 200;
+		Unsigned8BitModel model = normalizedModel(values);
+		assertRoundTrip(model, values, RansEncoder.DEFAULT_STREAMS, RansEncoder.DEFAULT_BLOCK_SIZE);
+		assertRoundTrip(model, values, 3, 4099);
+	}
+
+	@Test
+	public void shortLengthsTest() throws IOException, InsufficientBitsLeftException {
+		// Lengths and block sizes around the lane count leave some
+		// lanes short or unused in the last block.
+		int[] all = skewedValues(64, 592);
+		Unsigned8BitModel model = normalizedModel(all);
+		for (int streams=1; streams<=RansEncoder.MAX_STREAMS; streams++) {
+			for (int len=1; len<=2*RansEncoder.MAX_STREAMS+1; len++) {
+				int[] values = new int[len];
+				System.arraycopy(all, 0, values, 0, len);
+				for (int block_size=1; block_size<=len+1; block_size++) {
+					assertRoundTrip(model, values, streams, block_size);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void emptyTest() throws IOException {
+		// No block at all, only the sink's padding word.
+		Unsigned8BitModel model = normalizedModel(new int[0]);
+		assertEquals(4, encode(model, new int[0], RansEncoder.DEFAULT_STREAMS, RansEncoder.DEFAULT_BLOCK_SIZE).length);
+	}
+}
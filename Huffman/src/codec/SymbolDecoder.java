@@ -13,4 +13,16 @@ public interface SymbolDecoder {
 	 */
 	Symbol decode(BitSource bit_source) throws InsufficientBitsLeftException, IOException;
 
+	/* decodeIndex
+	 * Decodes next symbol and returns its index instead of the
+	 * symbol itself. Indices match those of the encoder side.
+	 */
+	int decodeIndex(BitSource bit_source) throws InsufficientBitsLeftException, IOException;
+
+	/* decode
+	 * Decodes the next len symbol indices into out starting at
+	 * out[off].
+	 */
+	void decode(BitSource bit_source, int[] out, int off, int len) throws InsufficientBitsLeftException, IOException;
+
 }
\ No newline at end of file
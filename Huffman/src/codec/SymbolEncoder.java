@@ -12,6 +12,20 @@ public interface SymbolEncoder {
 	 */
 	void encode(Symbol s, BitSink out) throws IOException;
 
+	/* encode
+	 * Same as above with the symbol given by its index, i.e. the
+	 * index of the symbol in the source model of the encoder. Hot
+	 * loops should use this form to avoid Symbol objects altogether.
+	 */
+	void encode(int symbol_index, BitSink out) throws IOException;
+
+	/* encode
+	 * Encodes len symbol indices starting at symbols[off]. Produces
+	 * the same output as encoding them one at a time, but lets the
+	 * encoder keep its state local over the whole run.
+	 */
+	void encode(int[] symbols, int off, int len, BitSink out) throws IOException;
+
 	/* close
 	 * Write any necessary pending bits and pad output
 	 * to flush to sink target. Once closed, the
@@ -10,4 +10,25 @@ public interface BitSource {
 	 * to 32.
 	 */	
 	int next(int count) throws InsufficientBitsLeftException, IOException;
+
+	/* peek
+	 * Returns the next count bits as lower order bits in value
+	 * returned without consuming them. Count must be less than
+	 * or equal to 32. If fewer than count bits are left, the
+	 * missing low order bits are returned as 0.
+	 */
+	int peek(int count) throws IOException;
+
+	/* consume
+	 * Discards count bits from bit source. Count must be less
+	 * than or equal to 32. Usually follows a peek() of at least
+	 * as many bits.
+	 */
+	void consume(int count) throws InsufficientBitsLeftException, IOException;
+
+	/* bitsRemaining
+	 * Number of bits that can still be read without running
+	 * out. Sources backed by a stream may only know a lower bound.
+	 */
+	long bitsRemaining() throws IOException;
 }
@@ -0,0 +1,117 @@
+package io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class BufferedBitSink implements BitSink {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private OutputStream _stream;
+	private byte[] _bytes;
+	private int _position;
+
+	/* _buffer holds _pending bits right aligned. _pending is always
+	 * less than 32 between calls, so at most 32 more bits can be
+	 * shifted in without losing any.
+	 */
+	private long _buffer;
+	private int _pending;
+
+	public BufferedBitSink(OutputStream stream) {
+		this(stream, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BufferedBitSink(OutputStream stream, int buffer_size) {
+		if (buffer_size < 4) {
+			throw new IllegalArgumentException("Buffer must hold at least one word");
+		}
+		_stream = stream;
+		_bytes = new byte[buffer_size & ~0x3];
+		_position = 0;
+		_buffer = 0x0L;
+		_pending = 0;
+	}
+
+//	@Override
+	public int write(int bits, int length) throws IOException {
+		if (length > 32) {
+			throw new RuntimeException("Can't write more than 32 bits from an int");
+		}
+		if (length <= 0) {
+			return 0;
+		}
+		_buffer = (_buffer << length) | (((long) bits) & (0xffffffffL >>> (32 - length)));
+		_pending += length;
+		if (_pending >= 32) {
+			emitWord();
+		}
+		return length;
+	}
+
+	/* write
+	 * Writes the low order length bits of a long, length <= 64.
+	 */
+	public int write(long bits, int length) throws IOException {
+		if (length > 64) {
+			throw new RuntimeException("Can't write more than 64 bits from a long");
+		}
+		if (length > 32) {
+			write((int) (bits >>> 32), length - 32);
+			write((int) bits, 32);
+			return length;
+		}
+		return write((int) bits, length);
+	}
+
+//	@Override
+	public int write(String bitstring) throws IOException {
+		int length = bitstring.length();
+		int i = 0;
+		while (i < length) {
+			int chunk = Math.min(32, length - i);
+			int bits = 0;
+			for (int end = i + chunk; i < end; i++) {
+				bits = (bits << 1) | (bitstring.charAt(i) == '0' ? 0 : 1);
+			}
+			write(bits, chunk);
+		}
+		return length;
+	}
+
+	/* padToWord
+	 * Same padding as OutputStreamBitSink: a full word of zeros is
+	 * written if already aligned. Buffered bytes are then handed to
+	 * the underlying stream so that closing the stream after an
+	 * encoder's close() loses nothing.
+	 */
+//	@Override
+	public int padToWord() throws IOException {
+		int padding = 32 - _pending;
+		write(0x0, padding);
+		flush();
+		return padding;
+	}
+
+	public void flush() throws IOException {
+		if (_position > 0) {
+			_stream.write(_bytes, 0, _position);
+			_position = 0;
+		}
+		_stream.flush();
+	}
+
+	private void emitWord() throws IOException {
+		_pending -= 32;
+		int word = (int) (_buffer >>> _pending);
+		_bytes[_position] = (byte) (word >>> 24);
+		_bytes[_position+1] = (byte) (word >>> 16);
+		_bytes[_position+2] = (byte) (word >>> 8);
+		_bytes[_position+3] = (byte) word;
+		_position += 4;
+		if (_position == _bytes.length) {
+			_stream.write(_bytes, 0, _position);
+			_position = 0;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+public class BufferedBitSinkJTests {
+
+	@Test
+	public void matchesOutputStreamBitSinkTest() throws IOException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		BitSink reference = new OutputStreamBitSink(expected);
+		BitSink buffered = new BufferedBitSink(actual, 16);
+
+		Random random = new Random(590);
+		for (int i=0; i<10000; i++) {
+			int length = 1 + random.nextInt(32);
+			int bits = random.nextInt();
+			reference.write(bits, length);
+			buffered.write(bits, length);
+			if (i % 100 == 0) {
+				reference.write("0110100111");
+				buffered.write("0110100111");
+			}
+		}
+		reference.padToWord();
+		buffered.padToWord();
+
+		assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+	}
+
+	@Test
+	public void longWriteTest() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BufferedBitSink sink = new BufferedBitSink(out);
+		sink.write(0x0123456789abcdefL, 64);
+		sink.write(0x5L, 3);
+		sink.padToWord();
+
+		byte[] expected = {0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xab, (byte) 0xcd, (byte) 0xef,
+				(byte) 0xa0, 0x00, 0x00, 0x00};
+		assertArrayEquals(expected, out.toByteArray());
+	}
+
+	@Test
+	public void padToWordWhenAlignedTest() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink sink = new BufferedBitSink(out);
+		sink.write(0xffffffff, 32);
+		assertEquals(32, sink.padToWord());
+		assertEquals(8, out.size());
+	}
+}
@@ -0,0 +1,171 @@
+package io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+public class ByteBufferBitSource implements BitSource {
+
+	/* Files are mapped this many bytes at a time so that sources
+	 * larger than a single MappedByteBuffer (2 GB) can be read.
+	 */
+	public static final long MAP_WINDOW_SIZE = 1L << 30;
+
+	private ByteBuffer _window;
+	private FileChannel _channel;
+	private long _channel_position;
+	private long _channel_size;
+	private long _window_size;
+
+	/* _buffer holds _available bits left aligned, i.e. the next
+	 * bit to be read is always the high order bit of _buffer.
+	 */
+	private long _buffer;
+	private int _available;
+
+	public ByteBufferBitSource(ByteBuffer buffer) {
+		_window = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		_channel = null;
+		_channel_position = 0;
+		_channel_size = 0;
+		_window_size = MAP_WINDOW_SIZE;
+		_buffer = 0x0L;
+		_available = 0;
+	}
+
+	public ByteBufferBitSource(FileChannel channel) throws IOException {
+		this(channel, MAP_WINDOW_SIZE);
+	}
+
+	/* ByteBufferBitSource
+	 * Maps channel window_size bytes at a time. Tests use small
+	 * windows to read across window boundaries.
+	 */
+	ByteBufferBitSource(FileChannel channel, long window_size) throws IOException {
+		this(ByteBuffer.allocate(0));
+		if (window_size < 1) {
+			throw new IllegalArgumentException("Window size must be positive");
+		}
+		_channel = channel;
+		_channel_position = channel.position();
+		_channel_size = channel.size();
+		_window_size = window_size;
+	}
+
+	/* fromFile
+	 * Memory maps file in windows of MAP_WINDOW_SIZE bytes.
+	 */
+	public static ByteBufferBitSource fromFile(File file) throws IOException {
+		return new ByteBufferBitSource(new FileInputStream(file).getChannel());
+	}
+
+	public void close() throws IOException {
+		if (_channel != null) {
+			_channel.close();
+		}
+	}
+
+//	@Override
+	public int next(int count) throws InsufficientBitsLeftException, IOException {
+		if (count > 32) {
+			throw new RuntimeException("Can't read more than 32 bits as an int");
+		}
+		if (count <= 0) {
+			return 0;
+		}
+		if (_available < count) {
+			refill();
+			if (_available < count) {
+				throw new InsufficientBitsLeftException(_available);
+			}
+		}
+		return take(count);
+	}
+
+	/* tryNext
+	 * Same as next() except that running out of bits is reported by
+	 * returning -1 instead of throwing an exception. No bits are
+	 * consumed in that case.
+	 */
+	public long tryNext(int count) throws IOException {
+		if (count > 32) {
+			throw new RuntimeException("Can't read more than 32 bits as an int");
+		}
+		if (count <= 0) {
+			return 0;
+		}
+		if (_available < count) {
+			refill();
+			if (_available < count) {
+				return -1;
+			}
+		}
+		return ((long) take(count)) & 0xffffffffL;
+	}
+
+//	@Override
+	public int peek(int count) throws IOException {
+		if (count > 32) {
+			throw new RuntimeException("Can't peek more than 32 bits as an int");
+		}
+		if (count <= 0) {
+			return 0;
+		}
+		if (_available < count) {
+			refill();
+		}
+		return (int) (_buffer >>> (64 - count));
+	}
+
+//	@Override
+	public void consume(int count) throws InsufficientBitsLeftException, IOException {
+		next(count);
+	}
+
+//	@Override
+	public long bitsRemaining() {
+		return _available + 8L * _window.remaining() + 8L * (_channel_size - _channel_position);
+	}
+
+	private int take(int count) {
+		int bits = (int) (_buffer >>> (64 - count));
+		_buffer <<= count;
+		_available -= count;
+		return bits;
+	}
+
+	/* refill
+	 * Tops up the accumulator to at least 57 bits if the underlying
+	 * buffer allows, taking a whole word at a time when possible.
+	 */
+	private void refill() throws IOException {
+		if (!_window.hasRemaining()) {
+			mapNextWindow();
+		}
+		if (_available <= 32 && _window.remaining() >= 4) {
+			_buffer |= (((long) _window.getInt()) & 0xffffffffL) << (32 - _available);
+			_available += 32;
+		}
+		while (_available <= 56) {
+			if (!_window.hasRemaining() && !mapNextWindow()) {
+				return;
+			}
+			_buffer |= (((long) _window.get()) & 0xffL) << (56 - _available);
+			_available += 8;
+		}
+	}
+
+	private boolean mapNextWindow() throws IOException {
+		if (_channel == null || _channel_position >= _channel_size) {
+			return false;
+		}
+		long length = Math.min(_window_size, _channel_size - _channel_position);
+		_window = _channel.map(FileChannel.MapMode.READ_ONLY, _channel_position, length);
+		_window.order(ByteOrder.BIG_ENDIAN);
+		_channel_position += length;
+		return true;
+	}
+}
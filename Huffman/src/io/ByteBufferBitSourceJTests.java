@@ -0,0 +1,117 @@
+package io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class ByteBufferBitSourceJTests {
+
+	private static byte[] randomBytes(int count, long seed) {
+		byte[] bytes = new byte[count];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static File tempFile(byte[] bytes) throws IOException {
+		File file = File.createTempFile("bits", ".bin");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(bytes);
+		out.close();
+		return file;
+	}
+
+	/* assertMatches
+	 * Reads all of bytes from source with random widths of 1 to 32
+	 * bits, mixing next(), peek() with consume() and tryNext(), and
+	 * checks every value against an InputStreamBitSource.
+	 */
+	private static void assertMatches(byte[] bytes, ByteBufferBitSource source, long seed)
+			throws IOException, InsufficientBitsLeftException {
+		BitSource reference = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+		Random random = new Random(seed);
+		long remaining = 8L * bytes.length;
+		while (remaining > 0) {
+			assertEquals(remaining, source.bitsRemaining());
+			int count = (int) Math.min(remaining, 1 + random.nextInt(32));
+			int expected = reference.next(count);
+			switch (random.nextInt(3)) {
+			case 0:
+				assertEquals(expected, source.next(count));
+				break;
+			case 1:
+				assertEquals(expected, source.peek(count));
+				source.consume(count);
+				break;
+			default:
+				assertEquals(((long) expected) & 0xffffffffL, source.tryNext(count));
+				break;
+			}
+			remaining -= count;
+		}
+		assertEquals(0, source.bitsRemaining());
+		assertEquals(-1, source.tryNext(1));
+	}
+
+	@Test
+	public void byteBufferTest() throws IOException, InsufficientBitsLeftException {
+		for (int n=0; n<8; n++) {
+			byte[] bytes = randomBytes(1000 + n, 590 + n);
+			assertMatches(bytes, new ByteBufferBitSource(ByteBuffer.wrap(bytes)), n);
+		}
+	}
+
+	@Test
+	public void wordBoundaryTest() throws IOException, InsufficientBitsLeftException {
+		// Reads that straddle every 32 bit boundary with the accumulator
+		// holding a different number of bits each time.
+		byte[] bytes = randomBytes(64, 591);
+		BitSource reference = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+		ByteBufferBitSource source = new ByteBufferBitSource(ByteBuffer.wrap(bytes));
+		assertEquals(reference.next(5), source.next(5));
+		for (int i=0; i<15; i++) {
+			assertEquals(reference.next(32), source.next(32));
+		}
+		assertEquals(reference.next(27), source.next(27));
+	}
+
+	@Test
+	public void mappedWindowsTest() throws IOException, InsufficientBitsLeftException {
+		byte[] bytes = randomBytes(1003, 592);
+		File file = tempFile(bytes);
+		long[] window_sizes = { 1, 3, 4, 5, 7, 64, 1000, ByteBufferBitSource.MAP_WINDOW_SIZE };
+		for (int w=0; w<window_sizes.length; w++) {
+			ByteBufferBitSource source = new ByteBufferBitSource(new FileInputStream(file).getChannel(), window_sizes[w]);
+			assertMatches(bytes, source, w);
+			source.close();
+		}
+	}
+
+	@Test
+	public void endOfInputTest() throws IOException, InsufficientBitsLeftException {
+		byte[] bytes = { (byte) 0xa5, 0x3c, (byte) 0xff };
+		ByteBufferBitSource source = new ByteBufferBitSource(ByteBuffer.wrap(bytes));
+		assertEquals(0xa, source.next(4));
+
+		// Too few bits: nothing is consumed.
+		assertEquals(-1, source.tryNext(21));
+		assertEquals(20, source.bitsRemaining());
+
+		// Missing bits past the end read as zeros.
+		assertEquals(0x53cff000, source.peek(32));
+		assertEquals(0x53cff, source.next(20));
+		assertEquals(0, source.peek(8));
+		try {
+			source.next(1);
+			fail("Read past end of input");
+		} catch (InsufficientBitsLeftException e) {
+		}
+	}
+}
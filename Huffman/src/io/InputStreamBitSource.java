@@ -3,15 +3,33 @@ package io;
 import java.io.IOException;
 import java.io.InputStream;
 
+/* InputStreamBitSource
+ * Reads bits from a stream through a 4 KB byte buffer. The source
+ * reads ahead: the stream may be up to 4 KB plus the 8 bytes of the
+ * bit accumulator past the last bit consumed, so anything read from
+ * the stream directly after using this source starts at an
+ * unspecified position. Wrap a stream only if nothing else is to be
+ * read from it afterwards.
+ */
 public class InputStreamBitSource implements BitSource {
 
 	private InputStream _stream;
-	private int _buffer;
+	private byte[] _bytes;
+	private int _bytes_position;
+	private int _bytes_length;
+
+	/* _buffer holds _available bits left aligned, i.e. the next
+	 * bit to be read is always the high order bit of _buffer.
+	 */
+	private long _buffer;
 	private int _available;
 
 	public InputStreamBitSource(InputStream stream) {
 		_stream = stream;
-		_buffer = 0x0;
+		_bytes = new byte[4096];
+		_bytes_position = 0;
+		_bytes_length = 0;
+		_buffer = 0x0L;
 		_available = 0;
 	}
 
@@ -25,33 +43,59 @@ public class InputStreamBitSource implements BitSource {
 			return 0;
 		}
 
-		if (_available == 0) {
-			// Refill buffer. 
-			_buffer = 0x0;
-			while (_available < count) {
-				int next_byte_from_stream = _stream.read();
-				if (next_byte_from_stream == -1) {
-					throw new InsufficientBitsLeftException(_available);				
-				}
-				_buffer = ((_buffer << 8) | next_byte_from_stream);
-				_available += 8;
-			}			
+		if (_available < count) {
+			refill();
+			if (_available < count) {
+				throw new InsufficientBitsLeftException(_available);
+			}
+		}
+
+		int bits = (int) (_buffer >>> (64 - count));
+		_buffer <<= count;
+		_available -= count;
+		return bits;
+	}
+
+//	@Override
+	public int peek(int count) throws IOException {
+		if (count > 32) {
+			throw new RuntimeException("Can't peek more than 32 bits as an int");
+		}
+		if (count <= 0) {
+			return 0;
 		}
-		
 		if (_available < count) {
-			int part_a_count = _available;
-			int part_b_count = (count - _available);
-			int part_a = next(part_a_count);
-			int part_b = next(part_b_count);
-			return ((part_a << part_b_count) | part_b);
-		} else {
-			int bits_from_buffer = (_buffer >> (_available - count));
-			int bits_from_buffer_mask = 0xffffffff;
-			if (count < 32) {
-				bits_from_buffer_mask = ~(bits_from_buffer_mask << count);
+			refill();
+		}
+		return (int) (_buffer >>> (64 - count));
+	}
+
+//	@Override
+	public void consume(int count) throws InsufficientBitsLeftException, IOException {
+		next(count);
+	}
+
+//	@Override
+	public long bitsRemaining() throws IOException {
+		return _available + 8L * (_bytes_length - _bytes_position) + 8L * _stream.available();
+	}
+
+	/* refill
+	 * Moves whole bytes into the accumulator until it holds more
+	 * than 56 bits or the stream is exhausted.
+	 */
+	private void refill() throws IOException {
+		while (_available <= 56) {
+			if (_bytes_position == _bytes_length) {
+				_bytes_length = _stream.read(_bytes);
+				_bytes_position = 0;
+				if (_bytes_length <= 0) {
+					_bytes_length = 0;
+					return;
+				}
 			}
-			_available -= count;
-			return bits_from_buffer & bits_from_buffer_mask;
+			_buffer |= (((long) _bytes[_bytes_position++]) & 0xffL) << (56 - _available);
+			_available += 8;
 		}
 	}
 }
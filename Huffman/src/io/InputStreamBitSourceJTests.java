@@ -0,0 +1,72 @@
+package io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+public class InputStreamBitSourceJTests {
+
+	@Test
+	public void peekPastEndTest() throws IOException, InsufficientBitsLeftException {
+		byte[] bytes = { (byte) 0xa5, 0x3c, (byte) 0xff };
+		BitSource source = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+
+		// Missing low order bits read as zeros and nothing is consumed.
+		assertEquals(0xa53cff00, source.peek(32));
+		assertEquals(0xa53cff00, source.peek(32));
+		assertEquals(24, source.bitsRemaining());
+
+		source.consume(20);
+		assertEquals(0xf, source.peek(4));
+		assertEquals(0xf0, source.peek(8));
+		assertEquals(0xf0000000, source.peek(32));
+		source.consume(4);
+		assertEquals(0, source.peek(32));
+		assertEquals(0, source.bitsRemaining());
+		try {
+			source.next(1);
+			fail("Read past end of input");
+		} catch (InsufficientBitsLeftException e) {
+		}
+	}
+
+	@Test
+	public void consumeAfterPeekTest() throws IOException, InsufficientBitsLeftException {
+		// Peek a random width, consume part of it and check the rest
+		// against next() on a second source over the same bytes.
+		byte[] bytes = new byte[10000];
+		Random random = new Random(590);
+		random.nextBytes(bytes);
+		BitSource source = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+		BitSource reference = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+
+		long remaining = 8L * bytes.length;
+		while (remaining > 0) {
+			int width = 1 + random.nextInt(32);
+			int count = (int) Math.min(remaining, 1 + random.nextInt(width));
+			int peeked = source.peek(width);
+			assertEquals(reference.next(count), peeked >>> (width - count));
+			source.consume(count);
+			remaining -= count;
+			assertEquals(remaining, source.bitsRemaining());
+		}
+	}
+
+	@Test
+	public void bitsRemainingTest() throws IOException, InsufficientBitsLeftException {
+		// Longer than the 4 KB read buffer, so the count covers bytes
+		// still in the stream, in the buffer and in the accumulator.
+		BitSource source = new InputStreamBitSource(new ByteArrayInputStream(new byte[5000]));
+		long remaining = 8L * 5000;
+		assertEquals(remaining, source.bitsRemaining());
+		while (remaining > 0) {
+			int count = (int) Math.min(remaining, 29);
+			source.next(count);
+			remaining -= count;
+			assertEquals(remaining, source.bitsRemaining());
+		}
+	}
+}
@@ -22,8 +22,12 @@ public class OutputStreamBitSink implements BitSink {
 		}
 		
 		if (length <= _available) {
+			int mask = 0xffffffff;
+			if (length < 32) {
+				mask = ~(mask << length);
+			}
 			_buffer <<= length;
-			_buffer |= (bits & (~(0xffffffff << length)));
+			_buffer |= (bits & mask);
 			_available -= length;
 			
 			if (_available == 0) {
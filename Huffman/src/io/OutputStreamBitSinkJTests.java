@@ -0,0 +1,83 @@
+package io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+public class OutputStreamBitSinkJTests {
+
+	/* baselineMask
+	 * Mask write() applied before 32 bit writes were fixed. Java only
+	 * uses the low 5 bits of a shift count, so for length 32 this is
+	 * ~0xffffffff, i.e. 0.
+	 */
+	private static int baselineMask(int length) {
+		return ~(0xffffffff << length);
+	}
+
+	private static byte[] written(int[] bits, int[] lengths) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink sink = new OutputStreamBitSink(out);
+		for (int i=0; i<bits.length; i++) {
+			sink.write(bits[i], lengths[i]);
+		}
+		sink.padToWord();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void onlyAlignedWordWritesChangedTest() {
+		// Writes of 1 to 31 bits use the same mask as before.
+		for (int length=1; length<32; length++) {
+			assertEquals((1 << length) - 1, baselineMask(length));
+		}
+		// A full word written on a word boundary used to be masked to
+		// zeros. Shorter writes never take that path, and a 32 bit
+		// write off a word boundary is split into shorter writes.
+		assertEquals(0, baselineMask(32));
+	}
+
+	@Test
+	public void alignedWordWriteTest() throws IOException {
+		byte[] bytes = written(new int[] { 0xdeadbeef, 0x5 }, new int[] { 32, 3 });
+		// The baseline sink wrote 0, 0, 0, 0 for the first word.
+		byte[] expected = { (byte) 0xde, (byte) 0xad, (byte) 0xbe, (byte) 0xef, (byte) 0xa0, 0, 0, 0 };
+		assertArrayEquals(expected, bytes);
+	}
+
+	@Test
+	public void unalignedWordWriteTest() throws IOException {
+		// Unchanged from the baseline: the same as two 16 bit writes.
+		byte[] whole = written(new int[] { 0x5, 0xdeadbeef }, new int[] { 3, 32 });
+		byte[] halves = written(new int[] { 0x5, 0xdead, 0xbeef }, new int[] { 3, 16, 16 });
+		assertArrayEquals(halves, whole);
+		byte[] expected = { (byte) 0xbb, (byte) 0xd5, (byte) 0xb7, (byte) 0xdd, (byte) 0xe0, 0, 0, 0 };
+		assertArrayEquals(expected, whole);
+	}
+
+	@Test
+	public void matchesBitStringTest() throws IOException {
+		// Random writes against the same bits written one at a time.
+		Random random = new Random(590);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		BitSink reference = new OutputStreamBitSink(expected);
+		BitSink sink = new OutputStreamBitSink(actual);
+		for (int i=0; i<10000; i++) {
+			int length = 1 + random.nextInt(32);
+			int bits = random.nextInt();
+			StringBuilder bitstring = new StringBuilder();
+			for (int b=length-1; b>=0; b--) {
+				bitstring.append(((bits >>> b) & 0x1) == 0 ? '0' : '1');
+			}
+			reference.write(bitstring.toString());
+			sink.write(bits, length);
+		}
+		reference.padToWord();
+		sink.padToWord();
+		assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+	}
+}
@@ -0,0 +1,131 @@
+package models;
+
+/* AdaptiveModel
+ * Model over symbols 0..symbol_count-1 whose counts grow as symbols
+ * are coded, so no training pass over the input is needed. Every
+ * count starts at 1 and is raised by the increment on each update.
+ * Once the total exceeds the maximum total all counts are halved,
+ * which bounds the precision coders need and lets the model follow
+ * changes in the input. Cumulative counts are kept in a Fenwick tree
+ * so lookups and updates take O(log n).
+ */
+public class AdaptiveModel implements AdaptiveSourceModel {
+
+	public class AdaptiveSymbolModel implements SymbolModel {
+		private IntSymbol _symbol;
+
+		public AdaptiveSymbolModel(int value) {
+			_symbol = new IntSymbol(value);
+		}
+
+//		@Override
+		public long getProbability(long precision) {
+			return getCount(_symbol.getValue()) * precision / getTotal();
+		}
+
+//		@Override
+		public Symbol getSymbol() {
+			return _symbol;
+		}
+	}
+
+	public static final int DEFAULT_INCREMENT = 32;
+	public static final int DEFAULT_MAX_TOTAL = 1 << 16;
+	public static final int MAX_TOTAL = 1 << 24;
+
+	private int[] _counts;
+	private int[] _tree;
+	private int _total;
+	private int _increment;
+	private int _max_total;
+	private AdaptiveSymbolModel[] _symbols;
+
+	public AdaptiveModel(int symbol_count) {
+		this(symbol_count, DEFAULT_INCREMENT, DEFAULT_MAX_TOTAL);
+	}
+
+	public AdaptiveModel(int symbol_count, int increment, int max_total) {
+		if (symbol_count < 1) {
+			throw new IllegalArgumentException("Model needs at least one symbol");
+		}
+		if (increment < 1) {
+			throw new IllegalArgumentException("Increment must be positive");
+		}
+		if (max_total > MAX_TOTAL || max_total < 2 * symbol_count + increment) {
+			throw new IllegalArgumentException("Maximum total must be between " + (2 * symbol_count + increment) + " and " + MAX_TOTAL);
+		}
+		_increment = increment;
+		_max_total = max_total;
+		_counts = new int[symbol_count];
+		_tree = new int[symbol_count];
+		for (int i=0; i<symbol_count; i++) {
+			_counts[i] = 1;
+		}
+		_total = symbol_count;
+		Fenwick.build(_tree, 0, _counts, 0, symbol_count);
+	}
+
+//	@Override
+	public void update(int i) {
+		_counts[i] += _increment;
+		_total += _increment;
+		if (_total > _max_total) {
+			_total = Fenwick.halve(_tree, 0, _counts, 0, _counts.length);
+		} else {
+			Fenwick.add(_tree, 0, _counts.length, i, _increment);
+		}
+	}
+
+//	@Override
+	public int getSymbolCount() {
+		return _counts.length;
+	}
+
+//	@Override
+	public SymbolModel getByIndex(int i) {
+		if (_symbols == null) {
+			_symbols = new AdaptiveSymbolModel[_counts.length];
+		}
+		if (_symbols[i] == null) {
+			_symbols[i] = new AdaptiveSymbolModel(i);
+		}
+		return _symbols[i];
+	}
+
+//	@Override
+	public int getIndex(Symbol s) {
+		if (!(s instanceof IntSymbol)) {
+			throw new IllegalArgumentException("Symbol not in model");
+		}
+		int value = ((IntSymbol) s).getValue();
+		if (value < 0 || value >= _counts.length) {
+			throw new IllegalArgumentException("Symbol not in model");
+		}
+		return value;
+	}
+
+//	@Override
+	public long getCount(int i) {
+		return _counts[i];
+	}
+
+//	@Override
+	public long getCumulative(int i) {
+		return Fenwick.prefix(_tree, 0, i);
+	}
+
+//	@Override
+	public long getTotal() {
+		return _total;
+	}
+
+//	@Override
+	public int getTotalBits() {
+		return CountNormalizer.totalBits(_total);
+	}
+
+//	@Override
+	public int findIndex(long cumulative) {
+		return Fenwick.find(_tree, 0, _counts.length, (int) cumulative);
+	}
+}
@@ -0,0 +1,46 @@
+package models;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class AdaptiveModelJTests {
+
+	private static void assertConsistent(AdaptiveModel model) {
+		long cumulative = 0;
+		for (int i=0; i<model.getSymbolCount(); i++) {
+			assertEquals(cumulative, model.getCumulative(i));
+			assertEquals(i, model.findIndex(cumulative));
+			assertEquals(i, model.findIndex(cumulative + model.getCount(i) - 1));
+			cumulative += model.getCount(i);
+		}
+		assertEquals(cumulative, model.getCumulative(model.getSymbolCount()));
+		assertEquals(cumulative, model.getTotal());
+	}
+
+	@Test
+	public void cumulativeCountsTest() {
+		AdaptiveModel model = new AdaptiveModel(100, 5, 1 << 20);
+		Random random = new Random(590);
+		for (int n=0; n<2000; n++) {
+			model.update(random.nextInt(100));
+		}
+		assertEquals(100 + 2000 * 5, model.getTotal());
+		assertConsistent(model);
+	}
+
+	@Test
+	public void halvingTest() {
+		AdaptiveModel model = new AdaptiveModel(256, 32, 1 << 12);
+		for (int n=0; n<1000; n++) {
+			model.update(7);
+			assertTrue(model.getTotal() <= 1 << 12);
+		}
+		for (int i=0; i<256; i++) {
+			assertTrue(model.getCount(i) > 0);
+		}
+		assertTrue(model.getCount(7) > model.getTotal() / 2);
+		assertConsistent(model);
+	}
+}
@@ -0,0 +1,11 @@
+package models;
+
+public interface AdaptiveSourceModel extends CumulativeSourceModel {
+
+	/* update
+	 * Records one more occurrence of the symbol with index i. Coders
+	 * call this right after coding a symbol, so an encoder and a
+	 * decoder starting from equal models stay equal.
+	 */
+	void update(int i);
+}
@@ -0,0 +1,167 @@
+package models;
+
+/* ContextModel
+ * A set of adaptive models over the same alphabet, one per context.
+ * select() picks the context the next symbol is coded in and all
+ * model methods then act on that context's counts, so the model can
+ * be handed to any coder that takes an AdaptiveSourceModel. Encoder
+ * and decoder must select the same context for every symbol.
+ *
+ * Counts for all contexts are kept in flat int arrays, context c
+ * using entries c*symbol_count up to (c+1)*symbol_count. Counts
+ * adapt and are halved exactly as in AdaptiveModel.
+ */
+public class ContextModel implements AdaptiveSourceModel {
+
+	public class ContextSymbolModel implements SymbolModel {
+		private IntSymbol _symbol;
+
+		public ContextSymbolModel(int value) {
+			_symbol = new IntSymbol(value);
+		}
+
+//		@Override
+		public long getProbability(long precision) {
+			return getCount(_symbol.getValue()) * precision / getTotal();
+		}
+
+//		@Override
+		public Symbol getSymbol() {
+			return _symbol;
+		}
+	}
+
+	private int _symbol_count;
+	private int _context_count;
+	private int[] _counts;
+	private int[] _trees;
+	private int[] _totals;
+	private int _increment;
+	private int _max_total;
+
+	private int _context;
+	private int _base;
+	private ContextSymbolModel[] _symbols;
+
+	public ContextModel(int symbol_count, int context_count) {
+		this(symbol_count, context_count, AdaptiveModel.DEFAULT_INCREMENT, AdaptiveModel.DEFAULT_MAX_TOTAL);
+	}
+
+	public ContextModel(int symbol_count, int context_count, int increment, int max_total) {
+		if (symbol_count < 1 || context_count < 1) {
+			throw new IllegalArgumentException("Model needs at least one symbol and one context");
+		}
+		if (increment < 1) {
+			throw new IllegalArgumentException("Increment must be positive");
+		}
+		if (max_total > AdaptiveModel.MAX_TOTAL || max_total < 2 * symbol_count + increment) {
+			throw new IllegalArgumentException("Maximum total must be between " + (2 * symbol_count + increment) + " and " + AdaptiveModel.MAX_TOTAL);
+		}
+		if ((long) symbol_count * context_count > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many contexts");
+		}
+		_symbol_count = symbol_count;
+		_context_count = context_count;
+		_increment = increment;
+		_max_total = max_total;
+
+		_counts = new int[symbol_count * context_count];
+		_trees = new int[symbol_count * context_count];
+		_totals = new int[context_count];
+		for (int i=0; i<_counts.length; i++) {
+			_counts[i] = 1;
+		}
+		for (int c=0; c<context_count; c++) {
+			_totals[c] = symbol_count;
+			Fenwick.build(_trees, c * symbol_count, _counts, c * symbol_count, symbol_count);
+		}
+		select(0);
+	}
+
+	public int getContextCount() {
+		return _context_count;
+	}
+
+	public int getContext() {
+		return _context;
+	}
+
+	/* select
+	 * Makes context the one the following calls refer to.
+	 */
+	public void select(int context) {
+		if (context < 0 || context >= _context_count) {
+			throw new IllegalArgumentException("Context out of range");
+		}
+		_context = context;
+		_base = context * _symbol_count;
+	}
+
+//	@Override
+	public void update(int i) {
+		_counts[_base + i] += _increment;
+		_totals[_context] += _increment;
+		if (_totals[_context] > _max_total) {
+			_totals[_context] = Fenwick.halve(_trees, _base, _counts, _base, _symbol_count);
+		} else {
+			Fenwick.add(_trees, _base, _symbol_count, i, _increment);
+		}
+	}
+
+//	@Override
+	public int getSymbolCount() {
+		return _symbol_count;
+	}
+
+	/* getByIndex
+	 * Symbol models are made once per index and report
+	 * probabilities in the context selected at the time of the call.
+	 */
+//	@Override
+	public SymbolModel getByIndex(int i) {
+		if (_symbols == null) {
+			_symbols = new ContextSymbolModel[_symbol_count];
+		}
+		if (_symbols[i] == null) {
+			_symbols[i] = new ContextSymbolModel(i);
+		}
+		return _symbols[i];
+	}
+
+//	@Override
+	public int getIndex(Symbol s) {
+		if (!(s instanceof IntSymbol)) {
+			throw new IllegalArgumentException("Symbol not in model");
+		}
+		int value = ((IntSymbol) s).getValue();
+		if (value < 0 || value >= _symbol_count) {
+			throw new IllegalArgumentException("Symbol not in model");
+		}
+		return value;
+	}
+
+//	@Override
+	public long getCount(int i) {
+		return _counts[_base + i];
+	}
+
+//	@Override
+	public long getCumulative(int i) {
+		return Fenwick.prefix(_trees, _base, i);
+	}
+
+//	@Override
+	public long getTotal() {
+		return _totals[_context];
+	}
+
+//	@Override
+	public int getTotalBits() {
+		return CountNormalizer.totalBits(_totals[_context]);
+	}
+
+//	@Override
+	public int findIndex(long cumulative) {
+		return Fenwick.find(_trees, _base, _symbol_count, (int) cumulative);
+	}
+}
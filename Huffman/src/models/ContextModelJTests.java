@@ -0,0 +1,172 @@
+package models;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+import codec.ArithmeticDecoder;
+import codec.ArithmeticEncoder;
+import codec.RangeDecoder;
+import codec.RangeEncoder;
+import codec.SymbolDecoder;
+import codec.SymbolEncoder;
+import io.BitSink;
+import io.BitSource;
+import io.BufferedBitSink;
+import io.InputStreamBitSource;
+import io.InsufficientBitsLeftException;
+
+public class ContextModelJTests {
+
+	private static void assertConsistent(ContextModel model) {
+		long cumulative = 0;
+		for (int i=0; i<model.getSymbolCount(); i++) {
+			assertEquals(cumulative, model.getCumulative(i));
+			assertEquals(i, model.findIndex(cumulative));
+			assertEquals(i, model.findIndex(cumulative + model.getCount(i) - 1));
+			cumulative += model.getCount(i);
+		}
+		assertEquals(cumulative, model.getCumulative(model.getSymbolCount()));
+		assertEquals(cumulative, model.getTotal());
+	}
+
+	/* contextOf
+	 * Context of symbol n of a test stream, from the symbol before it.
+	 */
+	private static int contextOf(int[] values, int n) {
+		return (n == 0) ? 0 : values[n-1] % 3;
+	}
+
+	/* contextValues
+	 * Values whose distribution depends strongly on the context of
+	 * each value, so a context model beats a single adaptive model.
+	 */
+	private static int[] contextValues(int count, long seed) {
+		Random random = new Random(seed);
+		int[] values = new int[count];
+		for (int n=0; n<count; n++) {
+			int context = contextOf(values, n);
+			int v = Math.min(63, (int) (-3 * Math.log(1.0 - random.nextDouble())));
+			values[n] = (context == 0) ? v : (context == 1) ? 63 - v : (v * 7) % 64;
+		}
+		return values;
+	}
+
+	@Test
+	public void separateContextsTest() {
+		ContextModel model = new ContextModel(10, 3, 5, 1 << 20);
+		model.select(1);
+		for (int n=0; n<100; n++) {
+			model.update(4);
+		}
+		model.select(2);
+		model.update(7);
+
+		model.select(0);
+		assertEquals(10, model.getTotal());
+		assertEquals(1, model.getCount(4));
+		assertConsistent(model);
+
+		model.select(1);
+		assertEquals(10 + 100 * 5, model.getTotal());
+		assertEquals(1 + 100 * 5, model.getCount(4));
+		assertEquals(1, model.getCount(7));
+		assertConsistent(model);
+
+		model.select(2);
+		assertEquals(10 + 5, model.getTotal());
+		assertEquals(6, model.getCount(7));
+		assertEquals(1, model.getCount(4));
+		assertConsistent(model);
+	}
+
+	@Test
+	public void halvingPerContextTest() {
+		ContextModel model = new ContextModel(256, 2, 32, 1 << 12);
+		model.select(1);
+		model.update(3);
+		model.select(0);
+		for (int n=0; n<1000; n++) {
+			model.update(7);
+			assertTrue(model.getTotal() <= 1 << 12);
+		}
+		for (int i=0; i<256; i++) {
+			assertTrue(model.getCount(i) > 0);
+		}
+		assertTrue(model.getCount(7) > model.getTotal() / 2);
+		assertConsistent(model);
+
+		// Halving context 0 leaves context 1 alone.
+		model.select(1);
+		assertEquals(256 + 32, model.getTotal());
+		assertEquals(33, model.getCount(3));
+		assertConsistent(model);
+	}
+
+	@Test
+	public void symbolModelReuseTest() {
+		ContextModel model = new ContextModel(4, 2, 4, 1 << 10);
+		SymbolModel symbol = model.getByIndex(2);
+		assertSame(symbol, model.getByIndex(2));
+		model.select(1);
+		model.update(2);
+		assertEquals(5 * 1000 / 8, symbol.getProbability(1000));
+		model.select(0);
+		assertEquals(1000 / 4, symbol.getProbability(1000));
+	}
+
+	private static byte[] encode(int[] values, SymbolEncoder encoder, ContextModel model) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		for (int n=0; n<values.length; n++) {
+			model.select(contextOf(values, n));
+			encoder.encode(values[n], bit_sink);
+		}
+		encoder.close(bit_sink);
+		return out.toByteArray();
+	}
+
+	private static void assertDecodes(int[] values, byte[] bytes, SymbolDecoder decoder, ContextModel model)
+			throws IOException, InsufficientBitsLeftException {
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(bytes));
+		int[] decoded = new int[values.length];
+		for (int n=0; n<values.length; n++) {
+			model.select(contextOf(decoded, n));
+			decoded[n] = decoder.decodeIndex(bit_source);
+			assertEquals(values[n], decoded[n]);
+		}
+	}
+
+	@Test
+	public void arithmeticRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		int[] values = contextValues(50000, 590);
+		ContextModel model = new ContextModel(64, 3);
+		byte[] bytes = encode(values, new ArithmeticEncoder(model), model);
+
+		model = new ContextModel(64, 3);
+		assertDecodes(values, bytes, new ArithmeticDecoder(model), model);
+
+		// The same values with a single context cost more.
+		ContextModel single = new ContextModel(64, 1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		SymbolEncoder encoder = new ArithmeticEncoder(single);
+		encoder.encode(values, 0, values.length, bit_sink);
+		encoder.close(bit_sink);
+		assertTrue(bytes.length < out.size());
+	}
+
+	@Test
+	public void rangeRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		int[] values = contextValues(50000, 591);
+		ContextModel model = new ContextModel(64, 3);
+		byte[] bytes = encode(values, new RangeEncoder(model), model);
+
+		model = new ContextModel(64, 3);
+		assertDecodes(values, bytes, new RangeDecoder(model), model);
+	}
+}
@@ -0,0 +1,111 @@
+package models;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+public class CountNormalizer {
+
+	public static final int MAX_BITS = 30;
+
+	/* normalize
+	 * Rescales counts so that they sum to exactly 2^bits. Every
+	 * symbol with a nonzero count keeps a count of at least 1 and
+	 * symbols with a zero count stay at 0. Rounding follows the
+	 * largest remainder method; the counts given to rare symbols
+	 * to keep them codable are taken back from the largest counts.
+	 */
+	public static long[] normalize(long[] counts, int bits) {
+		if (bits < 0 || bits > MAX_BITS) {
+			throw new IllegalArgumentException("Normalized total must be between 2^0 and 2^" + MAX_BITS);
+		}
+		long target = 1L << bits;
+
+		long total = 0;
+		int used = 0;
+		for (int i=0; i<counts.length; i++) {
+			if (counts[i] < 0) {
+				throw new IllegalArgumentException("Counts must not be negative");
+			}
+			if (counts[i] > 0) {
+				total += counts[i];
+				used++;
+			}
+		}
+		if (used == 0) {
+			throw new IllegalArgumentException("No symbol has a nonzero count");
+		}
+		if (used > target) {
+			throw new IllegalArgumentException(used + " symbols in use don't fit into a total of " + target);
+		}
+
+		final long[] normalized = new long[counts.length];
+		final double[] remainder = new double[counts.length];
+		long sum = 0;
+		for (int i=0; i<counts.length; i++) {
+			if (counts[i] > 0) {
+				double scaled = ((double) counts[i]) * target / total;
+				normalized[i] = Math.max(1, (long) scaled);
+				remainder[i] = scaled - normalized[i];
+				sum += normalized[i];
+			}
+		}
+
+		if (sum < target) {
+			PriorityQueue<Integer> by_remainder = new PriorityQueue<Integer>(counts.length, new Comparator<Integer>() {
+//				@Override
+				public int compare(Integer a, Integer b) {
+					if (remainder[a] != remainder[b]) {
+						return remainder[a] > remainder[b] ? -1 : 1;
+					}
+					return a.compareTo(b);
+				}
+			});
+			for (int i=0; i<counts.length; i++) {
+				if (counts[i] > 0) {
+					by_remainder.add(i);
+				}
+			}
+			while (sum < target) {
+				int i = by_remainder.poll();
+				normalized[i]++;
+				remainder[i] -= 1.0;
+				sum++;
+				by_remainder.add(i);
+			}
+		} else if (sum > target) {
+			PriorityQueue<Integer> by_count = new PriorityQueue<Integer>(counts.length, new Comparator<Integer>() {
+//				@Override
+				public int compare(Integer a, Integer b) {
+					if (normalized[a] != normalized[b]) {
+						return normalized[a] > normalized[b] ? -1 : 1;
+					}
+					return a.compareTo(b);
+				}
+			});
+			for (int i=0; i<counts.length; i++) {
+				if (normalized[i] > 1) {
+					by_count.add(i);
+				}
+			}
+			while (sum > target) {
+				int i = by_count.poll();
+				normalized[i]--;
+				sum--;
+				if (normalized[i] > 1) {
+					by_count.add(i);
+				}
+			}
+		}
+		return normalized;
+	}
+
+	/* totalBits
+	 * Log base 2 of total if total is a power of two, -1 otherwise.
+	 */
+	public static int totalBits(long total) {
+		if (total <= 0 || (total & (total - 1)) != 0) {
+			return -1;
+		}
+		return Long.numberOfTrailingZeros(total);
+	}
+}
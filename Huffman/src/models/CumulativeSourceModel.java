@@ -0,0 +1,34 @@
+package models;
+
+public interface CumulativeSourceModel extends SourceModel {
+
+	/* getCount
+	 * Frequency count of symbol with index i.
+	 */
+	long getCount(int i);
+
+	/* getCumulative
+	 * Sum of the counts of all symbols with index less than i.
+	 * getCumulative(0) is 0 and getCumulative(getSymbolCount())
+	 * equals getTotal().
+	 */
+	long getCumulative(int i);
+
+	/* getTotal
+	 * Sum of the counts of all symbols.
+	 */
+	long getTotal();
+
+	/* getTotalBits
+	 * Log base 2 of getTotal() if the total is a power of two, so
+	 * that coders can shift instead of divide. -1 otherwise.
+	 */
+	int getTotalBits();
+
+	/* findIndex
+	 * Index i of the symbol whose counts cover the given cumulative
+	 * count, i.e. getCumulative(i) <= cumulative < getCumulative(i+1).
+	 * Cumulative must be less than getTotal().
+	 */
+	int findIndex(long cumulative);
+}
@@ -0,0 +1,67 @@
+package models;
+
+/* Fenwick
+ * Binary indexed tree over n counts stored in tree[base..base+n-1].
+ * Several trees can share one array at different bases. Entry k-1
+ * holds the sum of the counts in (k - lowbit(k), k].
+ */
+class Fenwick {
+
+	public static void build(int[] tree, int base, int[] counts, int counts_base, int n) {
+		System.arraycopy(counts, counts_base, tree, base, n);
+		for (int k=1; k<=n; k++) {
+			int parent = k + (k & -k);
+			if (parent <= n) {
+				tree[base + parent - 1] += tree[base + k - 1];
+			}
+		}
+	}
+
+	/* halve
+	 * Halves the n counts at counts[counts_base..] rounding up, so no
+	 * count drops to zero, and rebuilds the tree over them. Returns
+	 * the new total of the counts.
+	 */
+	public static int halve(int[] tree, int base, int[] counts, int counts_base, int n) {
+		int total = 0;
+		for (int i=counts_base; i<counts_base+n; i++) {
+			counts[i] = (counts[i] + 1) >>> 1;
+			total += counts[i];
+		}
+		build(tree, base, counts, counts_base, n);
+		return total;
+	}
+
+	public static void add(int[] tree, int base, int n, int i, int delta) {
+		for (int k=i+1; k<=n; k+=k&-k) {
+			tree[base + k - 1] += delta;
+		}
+	}
+
+	/* prefix
+	 * Sum of the counts with index less than i.
+	 */
+	public static int prefix(int[] tree, int base, int i) {
+		int sum = 0;
+		for (int k=i; k>0; k-=k&-k) {
+			sum += tree[base + k - 1];
+		}
+		return sum;
+	}
+
+	/* find
+	 * Largest index i with prefix(i) <= target, i.e. the symbol
+	 * whose counts cover target.
+	 */
+	public static int find(int[] tree, int base, int n, int target) {
+		int pos = 0;
+		for (int step=Integer.highestOneBit(n); step>0; step>>>=1) {
+			int next = pos + step;
+			if (next <= n && tree[base + next - 1] <= target) {
+				pos = next;
+				target -= tree[base + next - 1];
+			}
+		}
+		return pos;
+	}
+}
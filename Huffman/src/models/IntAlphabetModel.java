@@ -0,0 +1,255 @@
+package models;
+
+/* IntAlphabetModel
+ * Static model over the integers min..max, e.g. signed 9 bit
+ * residuals or 12 bit tile numbers. Symbol index i stands for the
+ * value min+i. Counts and cumulative counts are plain arrays. The
+ * per symbol views returned by getByIndex() are only made the first
+ * time they are asked for and then reused; coders using symbol
+ * indices never ask.
+ */
+public class IntAlphabetModel implements CumulativeSourceModel {
+
+	public class IntSymbolModel implements SymbolModel {
+		private IntSymbol _symbol;
+		private int _index;
+
+		public IntSymbolModel(int index) {
+			_symbol = new IntSymbol(getValue(index));
+			_index = index;
+		}
+
+//		@Override
+		public long getProbability(long precision) {
+			return getCount(_index) * precision / getTotal();
+		}
+
+//		@Override
+		public Symbol getSymbol() {
+			return _symbol;
+		}
+	}
+
+	public static final int MAX_SYMBOL_COUNT = 1 << 16;
+	public static final long MAX_LOOKUP_TOTAL = 1L << 16;
+
+	/* Once the count total exceeds MAX_COUNT_TOTAL all counts are
+	 * halved. This keeps products of counts and 32 bit ranges within
+	 * a long and lets the arithmetic coders give every symbol with a
+	 * nonzero count a nonzero interval, however much input the model
+	 * is trained on.
+	 */
+	public static final long MAX_COUNT_TOTAL = 1L << 30;
+
+	private int _min;
+	private long[] _counts;
+	private long _count_total;
+	private long[] _cumulative;
+	private boolean _cumulative_valid;
+	private short[] _lookup;
+	private IntSymbolModel[] _symbols;
+
+	/* IntAlphabetModel
+	 * Every value starts with a count of 1.
+	 */
+	public IntAlphabetModel(int min, int max) {
+		this(min, initialCounts(min, max));
+	}
+
+	public IntAlphabetModel(int min, long[] counts) {
+		if (counts.length < 1 || counts.length > MAX_SYMBOL_COUNT) {
+			throw new IllegalArgumentException("Alphabet size must be between 1 and " + MAX_SYMBOL_COUNT);
+		}
+		if ((long) min + counts.length - 1 > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Alphabet exceeds int range");
+		}
+		_min = min;
+		_counts = new long[counts.length];
+		_count_total = 0;
+		for (int i=0; i<counts.length; i++) {
+			if (counts[i] < 0) {
+				throw new IllegalArgumentException("Counts can't be negative");
+			}
+			_counts[i] = counts[i];
+			_count_total += counts[i];
+			if (_count_total < 0) {
+				throw new IllegalArgumentException("Count total overflows");
+			}
+		}
+		_cumulative = new long[counts.length + 1];
+		_cumulative_valid = false;
+		while (_count_total > MAX_COUNT_TOTAL) {
+			rescale();
+		}
+	}
+
+	private static long[] initialCounts(int min, int max) {
+		if (max < min) {
+			throw new IllegalArgumentException("Maximum value below minimum value");
+		}
+		if ((long) max - min + 1 > MAX_SYMBOL_COUNT) {
+			throw new IllegalArgumentException("Alphabet size must be between 1 and " + MAX_SYMBOL_COUNT);
+		}
+		long[] counts = new long[max - min + 1];
+		for (int i=0; i<counts.length; i++) {
+			counts[i] = 1;
+		}
+		return counts;
+	}
+
+	public int getMin() {
+		return _min;
+	}
+
+	public int getMax() {
+		return _min + _counts.length - 1;
+	}
+
+	/* getValue
+	 * Value the symbol with index i stands for.
+	 */
+	public int getValue(int i) {
+		return _min + i;
+	}
+
+	/* getIndexOfValue
+	 * Symbol index of value, which must lie within min..max.
+	 */
+	public int getIndexOfValue(int value) {
+		int i = value - _min;
+		if (i < 0 || i >= _counts.length) {
+			throw new IllegalArgumentException("Value out of range");
+		}
+		return i;
+	}
+
+	public void train(int value) {
+		_counts[getIndexOfValue(value)]++;
+		_count_total++;
+		if (_count_total > MAX_COUNT_TOTAL) {
+			rescale();
+		}
+		_cumulative_valid = false;
+	}
+
+	/* normalize
+	 * Returns a copy of this model with counts rescaled to a total
+	 * of exactly 2^bits. Values seen at least once keep a nonzero
+	 * count.
+	 */
+	public IntAlphabetModel normalize(int bits) {
+		return new IntAlphabetModel(_min, CountNormalizer.normalize(_counts, bits));
+	}
+
+	/* getCounts
+	 * Copy of the counts, indexed by symbol index.
+	 */
+	public long[] getCounts() {
+		return _counts.clone();
+	}
+
+	/* rescale
+	 * Halves all counts rounding up, so relative frequencies stay
+	 * about the same and values seen at least once remain codable.
+	 */
+	private void rescale() {
+		_count_total = 0;
+		for (int i=0; i<_counts.length; i++) {
+			_counts[i] = (_counts[i] + 1) / 2;
+			_count_total += _counts[i];
+		}
+		_cumulative_valid = false;
+	}
+
+//	@Override
+	public int getSymbolCount() {
+		return _counts.length;
+	}
+
+//	@Override
+	public SymbolModel getByIndex(int i) {
+		if (_symbols == null) {
+			_symbols = new IntSymbolModel[_counts.length];
+		}
+		if (_symbols[i] == null) {
+			_symbols[i] = new IntSymbolModel(i);
+		}
+		return _symbols[i];
+	}
+
+//	@Override
+	public int getIndex(Symbol s) {
+		if (!(s instanceof IntSymbol)) {
+			throw new IllegalArgumentException("Symbol not in model");
+		}
+		return getIndexOfValue(((IntSymbol) s).getValue());
+	}
+
+//	@Override
+	public long getCount(int i) {
+		return _counts[i];
+	}
+
+//	@Override
+	public long getCumulative(int i) {
+		if (!_cumulative_valid) {
+			updateCumulative();
+		}
+		return _cumulative[i];
+	}
+
+//	@Override
+	public long getTotal() {
+		return _count_total;
+	}
+
+//	@Override
+	public int getTotalBits() {
+		return CountNormalizer.totalBits(_count_total);
+	}
+
+	/* findIndex
+	 * Direct lookup for power of two totals up to MAX_LOOKUP_TOTAL,
+	 * binary search otherwise.
+	 */
+//	@Override
+	public int findIndex(long cumulative) {
+		if (!_cumulative_valid) {
+			updateCumulative();
+		}
+		if (_lookup != null) {
+			return _lookup[(int) cumulative] & 0xffff;
+		}
+		int low = 0;
+		int high = _counts.length;
+		while (high - low > 1) {
+			int mid = (low + high) >>> 1;
+			if (_cumulative[mid] <= cumulative) {
+				low = mid;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void updateCumulative() {
+		long sum = 0;
+		for (int i=0; i<_counts.length; i++) {
+			_cumulative[i] = sum;
+			sum += _counts[i];
+		}
+		_cumulative[_counts.length] = sum;
+		_cumulative_valid = true;
+
+		_lookup = null;
+		if (sum > 0 && sum <= MAX_LOOKUP_TOTAL && (sum & (sum - 1)) == 0) {
+			_lookup = new short[(int) sum];
+			for (int i=0; i<_counts.length; i++) {
+				for (int c=(int) _cumulative[i]; c<_cumulative[i+1]; c++) {
+					_lookup[c] = (short) i;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package models;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+import codec.ArithmeticDecoder;
+import codec.ArithmeticEncoder;
+import codec.CanonicalHuffmanCode;
+import codec.CanonicalHuffmanEncoder;
+import codec.HuffmanDecoder;
+import codec.RangeDecoder;
+import codec.RangeEncoder;
+import codec.RansDecoder;
+import codec.RansEncoder;
+import codec.SymbolDecoder;
+import codec.SymbolEncoder;
+import io.BitSink;
+import io.BitSource;
+import io.BufferedBitSink;
+import io.InputStreamBitSource;
+import io.InsufficientBitsLeftException;
+
+public class IntAlphabetModelJTests {
+
+	/* signedResiduals
+	 * Values in -255..255 clustered around 0, like frame differences
+	 * taken without wrapping.
+	 */
+	private static int[] signedResiduals(int count, long seed) {
+		Random random = new Random(seed);
+		int[] values = new int[count];
+		for (int i=0; i<count; i++) {
+			int magnitude = Math.min(255, (int) (-4 * Math.log(1.0 - random.nextDouble())));
+			values[i] = random.nextBoolean() ? magnitude : -magnitude;
+		}
+		return values;
+	}
+
+	private static IntAlphabetModel trainedModel(int min, int max, int[] values) {
+		IntAlphabetModel model = new IntAlphabetModel(min, max);
+		for (int v : values) {
+			model.train(v);
+		}
+		return model;
+	}
+
+	private static int[] indices(IntAlphabetModel model, int[] values) {
+		int[] indices = new int[values.length];
+		for (int i=0; i<values.length; i++) {
+			indices[i] = model.getIndexOfValue(values[i]);
+		}
+		return indices;
+	}
+
+	private static void assertRoundTrip(IntAlphabetModel model, int[] values, SymbolEncoder encoder, SymbolDecoder decoder)
+			throws IOException, InsufficientBitsLeftException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitSink bit_sink = new BufferedBitSink(out);
+		encoder.encode(indices(model, values), 0, values.length, bit_sink);
+		encoder.close(bit_sink);
+
+		BitSource bit_source = new InputStreamBitSource(new ByteArrayInputStream(out.toByteArray()));
+		for (int i=0; i<values.length; i++) {
+			assertEquals(values[i], model.getValue(decoder.decodeIndex(bit_source)));
+		}
+	}
+
+	@Test
+	public void cumulativeCountsTest() {
+		IntAlphabetModel model = trainedModel(-255, 255, signedResiduals(10000, 1));
+		assertEquals(511, model.getSymbolCount());
+		assertEquals(511 + 10000, model.getTotal());
+		long cumulative = 0;
+		for (int i=0; i<model.getSymbolCount(); i++) {
+			assertEquals(cumulative, model.getCumulative(i));
+			if (model.getCount(i) > 0) {
+				assertEquals(i, model.findIndex(cumulative));
+				assertEquals(i, model.findIndex(cumulative + model.getCount(i) - 1));
+			}
+			cumulative += model.getCount(i);
+		}
+		assertEquals(model.getTotal(), model.getCumulative(model.getSymbolCount()));
+	}
+
+	@Test
+	public void symbolModelReuseTest() {
+		IntAlphabetModel model = new IntAlphabetModel(-10, 10);
+		SymbolModel symbol = model.getByIndex(3);
+		assertSame(symbol, model.getByIndex(3));
+		assertEquals(new IntSymbol(-7), symbol.getSymbol());
+		assertEquals(3, model.getIndex(symbol.getSymbol()));
+		model.train(-7);
+		assertEquals(2 * 2200 / 22, symbol.getProbability(2200));
+	}
+
+	@Test
+	public void rescaleTest() {
+		long[] counts = new long[1000];
+		counts[0] = IntAlphabetModel.MAX_COUNT_TOTAL;
+		counts[999] = 3;
+		IntAlphabetModel model = new IntAlphabetModel(0, counts);
+		assertTrue(model.getTotal() <= IntAlphabetModel.MAX_COUNT_TOTAL);
+		assertEquals(2, model.getCount(999));
+		assertEquals(0, model.getCount(500));
+	}
+
+	@Test
+	public void signedRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		int[] values = signedResiduals(50000, 590);
+		IntAlphabetModel model = trainedModel(-255, 255, values);
+		assertRoundTrip(model, values, new ArithmeticEncoder(model), new ArithmeticDecoder(model));
+
+		IntAlphabetModel normalized = model.normalize(16);
+		assertEquals(16, normalized.getTotalBits());
+		assertRoundTrip(normalized, values, new RangeEncoder(normalized), new RangeDecoder(normalized));
+		assertRoundTrip(normalized, values, new RansEncoder(normalized), new RansDecoder(normalized));
+
+		CanonicalHuffmanCode code = CanonicalHuffmanCode.fromModel(model, 1L << 32);
+		assertRoundTrip(model, values, new CanonicalHuffmanEncoder(code, model), new HuffmanDecoder(code, model));
+	}
+
+	@Test
+	public void sixteenBitRoundTripTest() throws IOException, InsufficientBitsLeftException {
+		Random random = new Random(16);
+		int[] values = new int[100000];
+		for (int i=0; i<values.length; i++) {
+			// Mostly small values with a long tail over the full 16 bits.
+			values[i] = (random.nextInt(4) == 0) ? random.nextInt(1 << 16) : random.nextInt(300);
+		}
+		// Only values that occur get a count, so normalizing to 2^16
+		// keeps the distribution skewed.
+		long[] counts = new long[1 << 16];
+		for (int v : values) {
+			counts[v]++;
+		}
+		IntAlphabetModel model = new IntAlphabetModel(0, counts);
+		assertEquals(1 << 16, model.getSymbolCount());
+		assertRoundTrip(model, values, new ArithmeticEncoder(model), new ArithmeticDecoder(model));
+
+		// Power of two total of 2^16, so findIndex uses the lookup table.
+		IntAlphabetModel normalized = model.normalize(16);
+		assertRoundTrip(normalized, values, new ArithmeticEncoder(normalized), new ArithmeticDecoder(normalized));
+		assertRoundTrip(normalized, values, new RangeEncoder(normalized), new RangeDecoder(normalized));
+		assertRoundTrip(normalized, values, new RansEncoder(normalized), new RansDecoder(normalized));
+
+		CanonicalHuffmanCode code = CanonicalHuffmanCode.fromModel(model, 1L << 32, 24);
+		assertRoundTrip(model, values, new CanonicalHuffmanEncoder(code, model), new HuffmanDecoder(code, model));
+	}
+}
@@ -0,0 +1,47 @@
+package models;
+
+public class IntSymbol implements Symbol {
+
+	private int _value;
+
+	public IntSymbol(int value) {
+		_value = value;
+	}
+
+	public int getValue() {
+		return _value;
+	}
+
+//	@Override
+	public int compareTo(Symbol o) {
+		if (!(o instanceof IntSymbol)) {
+			throw new IllegalArgumentException("IntSymbol only comparable to type of same");
+		}
+		int other = ((IntSymbol) o).getValue();
+		if (other > _value) {
+			return -1;
+		} else if (other < _value) {
+			return 1;
+		} else {
+			return 0;
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof IntSymbol)) {
+			return false;
+		}
+		return ((IntSymbol) o).getValue() == _value;
+	}
+
+	@Override
+	public int hashCode() {
+		return _value;
+	}
+
+	@Override
+	public String toString() {
+		return "" + _value;
+	}
+}
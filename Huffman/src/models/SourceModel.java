@@ -5,4 +5,11 @@ public interface SourceModel {
 	int getSymbolCount();
 	SymbolModel getByIndex(int i);
 
+	/* getIndex
+	 * Index of symbol s, i.e. the i for which getByIndex(i)
+	 * models s. Throws IllegalArgumentException if s is not
+	 * part of the model.
+	 */
+	int getIndex(Symbol s);
+
 }
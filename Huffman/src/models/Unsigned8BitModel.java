@@ -2,8 +2,13 @@ package models;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
-public class Unsigned8BitModel implements SourceModel {
+/* Unsigned8BitModel
+ * IntAlphabetModel over the byte values 0..255 whose symbols are
+ * Unsigned8BitSymbols.
+ */
+public class Unsigned8BitModel extends IntAlphabetModel {
 
 	public class Unsigned8BitSymbol implements Symbol {
 
@@ -56,24 +61,24 @@ public class Unsigned8BitModel implements SourceModel {
 		
 	}
 	
+	/* Unsigned8BitSymbolModel
+	 * View of one value of the model. The count itself is kept by
+	 * the model.
+	 */
 	public class Unsigned8BitSymbolModel implements SymbolModel {
 		private Unsigned8BitSymbol _symbol;
-		private long _count;
-		private Unsigned8BitModel _model;
 		
-		public Unsigned8BitSymbolModel(int value, long init_count, Unsigned8BitModel model) {
+		public Unsigned8BitSymbolModel(int value) {
 			_symbol = new Unsigned8BitSymbol(value);
-			_count = init_count;
-			_model = model;
 		}
 		
 		public void incrementCount() {
-			_count++;
+			train(_symbol.getValue());
 		}
 
 //		@Override
 		public long getProbability(long precision) {
-			return _count * precision / _model.getCountTotal();
+			return getCount() * precision / getTotal();
 		}
 
 //		@Override
@@ -82,56 +87,68 @@ public class Unsigned8BitModel implements SourceModel {
 		}
 
 		public long getCount() {
-			return _count;
+			return Unsigned8BitModel.this.getCount(_symbol.getValue());
 		}
 	}
-	
+
 	private Unsigned8BitSymbolModel[] _values;
-	private long _count_total;
 
 	public Unsigned8BitModel() {
-		_values = new Unsigned8BitSymbolModel[256];
-		for (int v=0; v<256; v++) {
-			_values[v] = new Unsigned8BitSymbolModel(v, 1, this);
-		}
-		_count_total = 256;
+		super(0, 255);
+		createValues();
 	}
 	
 	public Unsigned8BitModel(long[] counts) {
+		super(0, firstCounts(counts));
+		createValues();
+	}
+
+	private static long[] firstCounts(long[] counts) {
+		if (counts.length < 256) {
+			throw new IllegalArgumentException("Need a count for each of the 256 values");
+		}
+		return (counts.length == 256) ? counts : Arrays.copyOf(counts, 256);
+	}
+
+	private void createValues() {
 		_values = new Unsigned8BitSymbolModel[256];
-		_count_total = 0;
 		for (int v=0; v<256; v++) {
-			_values[v] = new Unsigned8BitSymbolModel(v, counts[v], this);
-			_count_total += counts[v];
+			_values[v] = new Unsigned8BitSymbolModel(v);
 		}
 	}
 
+	/* normalize
+	 * Returns a copy of this model with counts rescaled to a total
+	 * of exactly 2^bits. Symbols seen at least once keep a nonzero
+	 * count.
+	 */
+	public Unsigned8BitModel normalize(int bits) {
+		return new Unsigned8BitModel(CountNormalizer.normalize(getCounts(), bits));
+	}
+
 	public long getCountTotal() {
-		return _count_total;
+		return getTotal();
 	}
 
 	public void train(InputStream src, long input_count) 
 			throws IOException
 	{
 		while (input_count > 0) {
-			_values[src.read()].incrementCount();
-			_count_total++;
+			train(src.read());
 			input_count--;
 		}
 	}
-	
-	public void train(int value) {
-		_values[value].incrementCount();
-		_count_total++;
-	}
 
 //	@Override
-	public int getSymbolCount() {
-		return _values.length;
+	public SymbolModel getByIndex(int i) {
+		return _values[i];
 	}
 
 //	@Override
-	public SymbolModel getByIndex(int i) {
-		return _values[i];
+	public int getIndex(Symbol s) {
+		if (!(s instanceof Unsigned8BitSymbol)) {
+			throw new IllegalArgumentException("Symbol not in model");
+		}
+		return ((Unsigned8BitSymbol) s).getValue();
 	}
 }
@@ -0,0 +1,108 @@
+package video;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/* Frame
+ * One plane of 8 bit pixels stored row by row in a single byte
+ * array, i.e. pixel (x, y) is at index y*width + x. Pixel values
+ * are unsigned, 0 to 255.
+ */
+public class Frame {
+
+	private int _width;
+	private int _height;
+	private byte[] _pixels;
+
+	public Frame(int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Frame dimensions must be positive");
+		}
+		if ((long) width * height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Frame too large");
+		}
+		_width = width;
+		_height = height;
+		_pixels = new byte[width * height];
+	}
+
+	public int getWidth() {
+		return _width;
+	}
+
+	public int getHeight() {
+		return _height;
+	}
+
+	/* getPixels
+	 * The backing array itself, for loops that walk the frame
+	 * sequentially.
+	 */
+	public byte[] getPixels() {
+		return _pixels;
+	}
+
+	public int get(int x, int y) {
+		return _pixels[y * _width + x] & 0xff;
+	}
+
+	public void set(int x, int y, int value) {
+		_pixels[y * _width + x] = (byte) value;
+	}
+
+	public void clear() {
+		Arrays.fill(_pixels, (byte) 0);
+	}
+
+	public void copyFrom(Frame other) {
+		checkSize(other);
+		System.arraycopy(other._pixels, 0, _pixels, 0, _pixels.length);
+	}
+
+	/* readFrom
+	 * Fills the frame with the next width*height bytes of src.
+	 * Throws EOFException if src ends first.
+	 */
+	public void readFrom(InputStream src) throws IOException {
+		int off = 0;
+		while (off < _pixels.length) {
+			int count = src.read(_pixels, off, _pixels.length - off);
+			if (count < 0) {
+				throw new EOFException("Input ended within a frame");
+			}
+			off += count;
+		}
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(_pixels);
+	}
+
+	/* difference
+	 * Sets out to current - prior, per pixel and mod 256.
+	 */
+	public static void difference(Frame prior, Frame current, Frame out) {
+		prior.checkSize(current);
+		prior.checkSize(out);
+		FrameKernels.get().subtract(current._pixels, 0, prior._pixels, 0, out._pixels, 0, out._pixels.length);
+	}
+
+	/* reconstruct
+	 * Inverse of difference(): sets out to prior + difference, per
+	 * pixel and mod 256.
+	 */
+	public static void reconstruct(Frame prior, Frame difference, Frame out) {
+		prior.checkSize(difference);
+		prior.checkSize(out);
+		FrameKernels.get().add(prior._pixels, 0, difference._pixels, 0, out._pixels, 0, out._pixels.length);
+	}
+
+	private void checkSize(Frame other) {
+		if (other._width != _width || other._height != _height) {
+			throw new IllegalArgumentException("Frame dimensions differ");
+		}
+	}
+}
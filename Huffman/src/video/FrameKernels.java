@@ -0,0 +1,104 @@
+package video;
+
+import java.lang.reflect.InvocationTargetException;
+
+/* FrameKernels
+ * Per pixel arithmetic on runs of 8 bit pixels. Results wrap mod
+ * 256 the way byte arithmetic does, which is what frame differences
+ * and residuals need.
+ *
+ * get() returns the SIMD implementation in VectorFrameKernels when
+ * that class was compiled and the jdk.incubator.vector module is
+ * present at run time (java --add-modules jdk.incubator.vector),
+ * and the plain loops below otherwise.
+ */
+public abstract class FrameKernels {
+
+	private static final FrameKernels SCALAR = new ScalarFrameKernels();
+	private static final FrameKernels DEFAULT = load();
+
+	public static FrameKernels get() {
+		return DEFAULT;
+	}
+
+	public static FrameKernels scalar() {
+		return SCALAR;
+	}
+
+	/* subtract
+	 * out[out_off+i] = a[a_off+i] - b[b_off+i] mod 256, for i below len.
+	 * out may be the same array as a or b at the same offset.
+	 */
+	public abstract void subtract(byte[] a, int a_off, byte[] b, int b_off, byte[] out, int out_off, int len);
+
+	/* add
+	 * out[out_off+i] = a[a_off+i] + b[b_off+i] mod 256, for i below len.
+	 * out may be the same array as a or b at the same offset.
+	 */
+	public abstract void add(byte[] a, int a_off, byte[] b, int b_off, byte[] out, int out_off, int len);
+
+	/* addSquaredDifferences
+	 * acc[i] += (a[a_off+i] - value)^2, for i below len.
+	 */
+	public abstract void addSquaredDifferences(int[] a, int a_off, int value, int[] acc, int len);
+
+	public abstract String getName();
+
+	/* load
+	 * Falls back to the scalar kernels only when the vector class is
+	 * missing or can't be linked. A vector class that fails in its
+	 * own initialization or constructor is a bug and is rethrown.
+	 */
+	private static FrameKernels load() {
+		try {
+			Class<?> c = Class.forName("video.VectorFrameKernels");
+			return (FrameKernels) c.getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			// Built without make vector.
+			return SCALAR;
+		} catch (ExceptionInInitializerError e) {
+			throw e;
+		} catch (LinkageError e) {
+			// Run without --add-modules jdk.incubator.vector.
+			return SCALAR;
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException("Can't create vector kernels", e);
+		} catch (InstantiationException e) {
+			throw new RuntimeException("Can't create vector kernels", e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Can't create vector kernels", e);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException("Can't create vector kernels", e.getCause());
+		}
+	}
+}
+
+class ScalarFrameKernels extends FrameKernels {
+
+//	@Override
+	public void subtract(byte[] a, int a_off, byte[] b, int b_off, byte[] out, int out_off, int len) {
+		for (int i=0; i<len; i++) {
+			out[out_off+i] = (byte) (a[a_off+i] - b[b_off+i]);
+		}
+	}
+
+//	@Override
+	public void add(byte[] a, int a_off, byte[] b, int b_off, byte[] out, int out_off, int len) {
+		for (int i=0; i<len; i++) {
+			out[out_off+i] = (byte) (a[a_off+i] + b[b_off+i]);
+		}
+	}
+
+//	@Override
+	public void addSquaredDifferences(int[] a, int a_off, int value, int[] acc, int len) {
+		for (int i=0; i<len; i++) {
+			int d = a[a_off+i] - value;
+			acc[i] += d * d;
+		}
+	}
+
+//	@Override
+	public String getName() {
+		return "scalar";
+	}
+}
@@ -0,0 +1,101 @@
+package video;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class FrameKernelsJTests {
+
+	/* Set by make vectortest, which runs these tests with the
+	 * jdk.incubator.vector module and so expects the vector kernels.
+	 */
+	public static final String REQUIRE_VECTOR_PROPERTY = "video.requireVector";
+
+	private static boolean vectorLoaded() {
+		return FrameKernels.get() != FrameKernels.scalar();
+	}
+
+	@Test
+	public void vectorLoadedTest() {
+		assumeTrue(Boolean.getBoolean(REQUIRE_VECTOR_PROPERTY));
+		assertTrue(vectorLoaded());
+		assertFalse("scalar".equals(FrameKernels.get().getName()));
+	}
+
+	@Test
+	public void matchesScalarTest() {
+		// Without the vector kernels this would compare the scalar
+		// kernels with themselves.
+		assumeTrue(vectorLoaded());
+		Random random = new Random(590);
+		FrameKernels kernels = FrameKernels.get();
+		FrameKernels scalar = FrameKernels.scalar();
+		// Odd lengths and offsets exercise the tail loops.
+		for (int len=0; len<200; len+=7) {
+			byte[] a = new byte[len + 3];
+			byte[] b = new byte[len + 5];
+			random.nextBytes(a);
+			random.nextBytes(b);
+			byte[] expected = new byte[len + 1];
+			byte[] actual = new byte[len + 1];
+
+			scalar.subtract(a, 3, b, 5, expected, 1, len);
+			kernels.subtract(a, 3, b, 5, actual, 1, len);
+			assertArrayEquals(expected, actual);
+
+			scalar.add(a, 3, b, 5, expected, 1, len);
+			kernels.add(a, 3, b, 5, actual, 1, len);
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void squaredDifferencesMatchScalarTest() {
+		assumeTrue(vectorLoaded());
+		Random random = new Random(591);
+		for (int len=0; len<200; len+=7) {
+			int[] a = new int[len + 2];
+			for (int i=0; i<a.length; i++) {
+				a[i] = random.nextInt(256);
+			}
+			int[] expected = new int[len];
+			int[] actual = new int[len];
+			for (int value=0; value<256; value+=51) {
+				FrameKernels.scalar().addSquaredDifferences(a, 2, value, expected, len);
+				FrameKernels.get().addSquaredDifferences(a, 2, value, actual, len);
+			}
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void wrapsTest() {
+		byte[] a = { 0, (byte) 255, 10 };
+		byte[] b = { 1, 1, 10 };
+		byte[] out = new byte[3];
+		FrameKernels.scalar().subtract(a, 0, b, 0, out, 0, 3);
+		assertEquals(255, out[0] & 0xff);
+		assertEquals(254, out[1] & 0xff);
+		assertEquals(0, out[2] & 0xff);
+		FrameKernels.scalar().add(a, 0, b, 0, out, 0, 3);
+		assertEquals(1, out[0] & 0xff);
+		assertEquals(0, out[1] & 0xff);
+		assertEquals(20, out[2] & 0xff);
+	}
+
+	@Test
+	public void frameRoundTripTest() {
+		Random random = new Random(17);
+		Frame prior = new Frame(37, 11);
+		Frame current = new Frame(37, 11);
+		random.nextBytes(prior.getPixels());
+		random.nextBytes(current.getPixels());
+		Frame difference = new Frame(37, 11);
+		Frame.difference(prior, current, difference);
+		Frame reconstructed = new Frame(37, 11);
+		Frame.reconstruct(prior, difference, reconstructed);
+		assertArrayEquals(current.getPixels(), reconstructed.getPixels());
+	}
+}
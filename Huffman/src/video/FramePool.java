@@ -0,0 +1,44 @@
+package video;
+
+import java.util.ArrayDeque;
+
+/* FramePool
+ * Recycles frames of one size so that a video can be processed
+ * without allocating a frame per picture. Frames handed out by
+ * acquire() hold whatever a previous user left in them.
+ */
+public class FramePool {
+
+	private int _width;
+	private int _height;
+	private ArrayDeque<Frame> _free;
+
+	public FramePool(int width, int height) {
+		_width = width;
+		_height = height;
+		_free = new ArrayDeque<Frame>();
+	}
+
+	public int getWidth() {
+		return _width;
+	}
+
+	public int getHeight() {
+		return _height;
+	}
+
+	public Frame acquire() {
+		Frame frame = _free.poll();
+		if (frame == null) {
+			frame = new Frame(_width, _height);
+		}
+		return frame;
+	}
+
+	public void release(Frame frame) {
+		if (frame.getWidth() != _width || frame.getHeight() != _height) {
+			throw new IllegalArgumentException("Frame doesn't belong to this pool");
+		}
+		_free.push(frame);
+	}
+}
@@ -0,0 +1,42 @@
+package video;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FramePoolJTests {
+
+	@Test
+	public void reuseTest() {
+		FramePool pool = new FramePool(8, 5);
+		Frame first = pool.acquire();
+		assertEquals(8, first.getWidth());
+		assertEquals(5, first.getHeight());
+
+		pool.release(first);
+		assertSame(first, pool.acquire());
+
+		// Nothing released, so a new frame.
+		Frame second = pool.acquire();
+		assertNotSame(first, second);
+		assertEquals(8, second.getWidth());
+		assertEquals(5, second.getHeight());
+	}
+
+	@Test
+	public void wrongSizeTest() {
+		FramePool pool = new FramePool(8, 5);
+		Frame[] wrong = { new Frame(5, 8), new Frame(8, 6), new Frame(7, 5) };
+		for (Frame frame : wrong) {
+			try {
+				pool.release(frame);
+				fail("Released a " + frame.getWidth() + "x" + frame.getHeight() + " frame");
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		// None of them got into the pool.
+		Frame frame = pool.acquire();
+		assertEquals(8, frame.getWidth());
+		assertEquals(5, frame.getHeight());
+	}
+}
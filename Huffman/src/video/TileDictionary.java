@@ -0,0 +1,106 @@
+package video;
+
+/* TileDictionary
+ * A dictionary of square tiles given as tile numbers (see
+ * TileVideoApp.tileNum), decoded once into a pixel-major table:
+ * the value of pixel p of entry e, with pixels numbered row by row
+ * within the tile, is at p*size() + e. Matching a tile then walks
+ * all entries for one pixel at a time, which is one call of
+ * FrameKernels.addSquaredDifferences per pixel.
+ */
+public class TileDictionary {
+
+	private int _tile_size;
+	private int _size;
+	private int[] _tile_nums;
+	private int[] _table;
+
+	public TileDictionary(int[] tile_nums, int tile_size, int buckets) {
+		if (tile_nums.length == 0) {
+			throw new IllegalArgumentException("Empty dictionary");
+		}
+		if (tile_size < 1 || buckets < 1) {
+			throw new IllegalArgumentException("Tile size and bucket count must be positive");
+		}
+		_tile_size = tile_size;
+		_size = tile_nums.length;
+		_tile_nums = tile_nums.clone();
+
+		int bucket_size = 256 / buckets;
+		int pixels = tile_size * tile_size;
+		_table = new int[pixels * _size];
+		for (int e=0; e<_size; e++) {
+			// Last pixel of the tile is in the lowest digit.
+			int tile_num = tile_nums[e];
+			for (int p=pixels-1; p>=0; p--) {
+				_table[p*_size + e] = (tile_num % buckets) * bucket_size;
+				tile_num /= buckets;
+			}
+		}
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public int getTileSize() {
+		return _tile_size;
+	}
+
+	public int getTileNum(int entry) {
+		return _tile_nums[entry];
+	}
+
+	/* get
+	 * Value of pixel (x, y) of the tile of the given entry.
+	 */
+	public int get(int entry, int x, int y) {
+		return _table[(y*_tile_size + x)*_size + entry];
+	}
+
+	/* best
+	 * Index of the entry with the smallest sum of squared
+	 * differences to the tile of frame with its top left corner at
+	 * (x0, y0). The lowest index wins ties. scratch must hold at
+	 * least size() ints; its contents are overwritten.
+	 */
+	public int best(Frame frame, int x0, int y0, int[] scratch) {
+		FrameKernels kernels = FrameKernels.get();
+		int width = frame.getWidth();
+		byte[] pixels = frame.getPixels();
+
+		for (int e=0; e<_size; e++) {
+			scratch[e] = 0;
+		}
+		int p = 0;
+		for (int y=0; y<_tile_size; y++) {
+			int off = (y0+y) * width + x0;
+			for (int x=0; x<_tile_size; x++) {
+				kernels.addSquaredDifferences(_table, p*_size, pixels[off+x] & 0xff, scratch, _size);
+				p++;
+			}
+		}
+
+		int best = 0;
+		for (int e=1; e<_size; e++) {
+			if (scratch[e] < scratch[best]) {
+				best = e;
+			}
+		}
+		return best;
+	}
+
+	/* copyTile
+	 * Writes the tile of the given entry into out, row y of the tile
+	 * starting at off + y*stride.
+	 */
+	public void copyTile(int entry, byte[] out, int off, int stride) {
+		int p = 0;
+		for (int y=0; y<_tile_size; y++) {
+			for (int x=0; x<_tile_size; x++) {
+				out[off + y*stride + x] = (byte) _table[p*_size + entry];
+				p++;
+			}
+		}
+	}
+}
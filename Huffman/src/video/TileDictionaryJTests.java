@@ -0,0 +1,53 @@
+package video;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TileDictionaryJTests {
+
+	@Test
+	public void decodeTest() {
+		// Digits base 4, first pixel most significant: 0 1 / 2 3.
+		int tile_num = 0*64 + 1*16 + 2*4 + 3;
+		TileDictionary dictionary = new TileDictionary(new int[] { 0, tile_num }, 2, 4);
+		assertEquals(2, dictionary.size());
+		assertEquals(0, dictionary.get(1, 0, 0));
+		assertEquals(64, dictionary.get(1, 1, 0));
+		assertEquals(128, dictionary.get(1, 0, 1));
+		assertEquals(192, dictionary.get(1, 1, 1));
+		for (int y=0; y<2; y++) {
+			for (int x=0; x<2; x++) {
+				assertEquals(0, dictionary.get(0, x, y));
+			}
+		}
+	}
+
+	@Test
+	public void bestTest() {
+		int tile_num = 0*64 + 1*16 + 2*4 + 3;
+		TileDictionary dictionary = new TileDictionary(new int[] { 0, tile_num, tile_num }, 2, 4);
+		Frame frame = new Frame(4, 3);
+		frame.set(2, 1, 10);
+		frame.set(3, 1, 60);
+		frame.set(2, 2, 130);
+		frame.set(3, 2, 200);
+		int[] scratch = new int[dictionary.size()];
+		// Entries 1 and 2 tie, the lower index wins.
+		assertEquals(1, dictionary.best(frame, 2, 1, scratch));
+		assertEquals(0, dictionary.best(frame, 0, 0, scratch));
+	}
+
+	@Test
+	public void copyTileTest() {
+		int tile_num = 0*64 + 1*16 + 2*4 + 3;
+		TileDictionary dictionary = new TileDictionary(new int[] { tile_num }, 2, 4);
+		Frame frame = new Frame(4, 3);
+		dictionary.copyTile(0, frame.getPixels(), 1*4 + 2, 4);
+		assertEquals(0, frame.get(2, 1));
+		assertEquals(64, frame.get(3, 1));
+		assertEquals(128, frame.get(2, 2));
+		assertEquals(192, frame.get(3, 2));
+		assertEquals(0, frame.get(1, 1));
+	}
+}
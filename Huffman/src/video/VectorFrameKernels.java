@@ -0,0 +1,65 @@
+package video;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/* VectorFrameKernels
+ * FrameKernels on the incubating Vector API. Lanewise byte add and
+ * subtract wrap, so mod 256 comes for free. Only ever loaded
+ * reflectively by FrameKernels; needs a JDK with the
+ * jdk.incubator.vector module (16 or later) to compile and
+ * --add-modules jdk.incubator.vector to run.
+ */
+class VectorFrameKernels extends FrameKernels {
+
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+
+//	@Override
+	public void subtract(byte[] a, int a_off, byte[] b, int b_off, byte[] out, int out_off, int len) {
+		int i = 0;
+		int bound = SPECIES.loopBound(len);
+		for (; i<bound; i+=SPECIES.length()) {
+			ByteVector va = ByteVector.fromArray(SPECIES, a, a_off+i);
+			ByteVector vb = ByteVector.fromArray(SPECIES, b, b_off+i);
+			va.sub(vb).intoArray(out, out_off+i);
+		}
+		for (; i<len; i++) {
+			out[out_off+i] = (byte) (a[a_off+i] - b[b_off+i]);
+		}
+	}
+
+//	@Override
+	public void add(byte[] a, int a_off, byte[] b, int b_off, byte[] out, int out_off, int len) {
+		int i = 0;
+		int bound = SPECIES.loopBound(len);
+		for (; i<bound; i+=SPECIES.length()) {
+			ByteVector va = ByteVector.fromArray(SPECIES, a, a_off+i);
+			ByteVector vb = ByteVector.fromArray(SPECIES, b, b_off+i);
+			va.add(vb).intoArray(out, out_off+i);
+		}
+		for (; i<len; i++) {
+			out[out_off+i] = (byte) (a[a_off+i] + b[b_off+i]);
+		}
+	}
+
+//	@Override
+	public void addSquaredDifferences(int[] a, int a_off, int value, int[] acc, int len) {
+		int i = 0;
+		int bound = INT_SPECIES.loopBound(len);
+		for (; i<bound; i+=INT_SPECIES.length()) {
+			IntVector d = IntVector.fromArray(INT_SPECIES, a, a_off+i).sub(value);
+			IntVector.fromArray(INT_SPECIES, acc, i).add(d.mul(d)).intoArray(acc, i);
+		}
+		for (; i<len; i++) {
+			int d = a[a_off+i] - value;
+			acc[i] += d * d;
+		}
+	}
+
+//	@Override
+	public String getName() {
+		return "vector (" + SPECIES.length() + " lanes)";
+	}
+}
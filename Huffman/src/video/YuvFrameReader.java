@@ -0,0 +1,115 @@
+package video;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/* YuvFrameReader
+ * Reads frames of a raw video file with whole-frame positional
+ * reads on a FileChannel, straight into the frame's own pixel
+ * array. Frame n starts at byte n*frame_stride; only the first
+ * width*height bytes of each frame (the luma plane) are read.
+ * For files holding only one plane frame_stride is width*height,
+ * for planar 4:2:0 files it is width*height*3/2.
+ */
+public class YuvFrameReader {
+
+	private RandomAccessFile _file;
+	private FileChannel _channel;
+	private int _width;
+	private int _height;
+	private long _frame_stride;
+	private int _frame_count;
+	private int _next_frame;
+
+	public YuvFrameReader(File file, int width, int height) throws IOException {
+		this(file, width, height, (long) width * height);
+	}
+
+	public YuvFrameReader(File file, int width, int height, long frame_stride) throws IOException {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Frame dimensions must be positive");
+		}
+		if (frame_stride < (long) width * height) {
+			throw new IllegalArgumentException("Frame stride smaller than frame");
+		}
+		_file = new RandomAccessFile(file, "r");
+		_channel = _file.getChannel();
+		_width = width;
+		_height = height;
+		_frame_stride = frame_stride;
+
+		// A trailing partial frame still counts if its luma plane is complete.
+		long size = _channel.size();
+		long frames = size / frame_stride;
+		if (size - frames * frame_stride >= (long) width * height) {
+			frames++;
+		}
+		_frame_count = (int) Math.min(frames, Integer.MAX_VALUE);
+		_next_frame = 0;
+	}
+
+	public int getWidth() {
+		return _width;
+	}
+
+	public int getHeight() {
+		return _height;
+	}
+
+	public int getFrameCount() {
+		return _frame_count;
+	}
+
+	/* read
+	 * Reads frame n into out. Does not change the position used
+	 * by next().
+	 */
+	public void read(int n, Frame out) throws IOException {
+		if (n < 0 || n >= _frame_count) {
+			throw new IllegalArgumentException("No frame " + n + " in file");
+		}
+		if (out.getWidth() != _width || out.getHeight() != _height) {
+			throw new IllegalArgumentException("Frame dimensions differ");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(out.getPixels());
+		long position = n * _frame_stride;
+		while (buffer.hasRemaining()) {
+			int count = _channel.read(buffer, position + buffer.position());
+			if (count < 0) {
+				throw new EOFException("File ended within frame " + n);
+			}
+		}
+	}
+
+	/* next
+	 * Reads the next frame in sequence into out. Returns false,
+	 * leaving out unchanged, once all frames have been read.
+	 */
+	public boolean next(Frame out) throws IOException {
+		if (_next_frame >= _frame_count) {
+			return false;
+		}
+		read(_next_frame, out);
+		_next_frame++;
+		return true;
+	}
+
+	/* seek
+	 * Sets the frame that next() reads.
+	 */
+	public void seek(int n) {
+		if (n < 0 || n > _frame_count) {
+			throw new IllegalArgumentException("No frame " + n + " in file");
+		}
+		_next_frame = n;
+	}
+
+	public void close() throws IOException {
+		_channel.close();
+		_file.close();
+	}
+}
@@ -0,0 +1,125 @@
+package video;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class YuvFrameReaderJTests {
+
+	private static final int WIDTH = 6;
+	private static final int HEIGHT = 4;
+	private static final int LUMA = WIDTH * HEIGHT;
+	private static final int STRIDE_420 = LUMA * 3 / 2;
+
+	private static byte[] randomBytes(int count, long seed) {
+		byte[] bytes = new byte[count];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static File tempFile(byte[] bytes) throws IOException {
+		File file = File.createTempFile("yuv", ".yuv");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(bytes);
+		out.close();
+		return file;
+	}
+
+	private static byte[] luma(byte[] bytes, long stride, int n) {
+		int start = (int) (n * stride);
+		return Arrays.copyOfRange(bytes, start, start + LUMA);
+	}
+
+	/* assertFrames
+	 * Checks the frame count, read(n) in random order and next()
+	 * from the start to the end of the file.
+	 */
+	private static void assertFrames(byte[] bytes, long stride, int frame_count, YuvFrameReader reader) throws IOException {
+		assertEquals(frame_count, reader.getFrameCount());
+		Frame frame = new Frame(WIDTH, HEIGHT);
+
+		Random random = new Random(frame_count);
+		for (int i=0; i<3*frame_count; i++) {
+			int n = random.nextInt(frame_count);
+			reader.read(n, frame);
+			assertArrayEquals(luma(bytes, stride, n), frame.getPixels());
+		}
+
+		// read() leaves next() at the first frame.
+		for (int n=0; n<frame_count; n++) {
+			assertTrue(reader.next(frame));
+			assertArrayEquals(luma(bytes, stride, n), frame.getPixels());
+		}
+		byte[] last = frame.getPixels().clone();
+		assertFalse(reader.next(frame));
+		assertArrayEquals(last, frame.getPixels());
+	}
+
+	@Test
+	public void lumaOnlyTest() throws IOException {
+		// Four frames and a partial fifth, which doesn't count.
+		byte[] bytes = randomBytes(4 * LUMA + 10, 590);
+		YuvFrameReader reader = new YuvFrameReader(tempFile(bytes), WIDTH, HEIGHT);
+		assertFrames(bytes, LUMA, 4, reader);
+		reader.close();
+	}
+
+	@Test
+	public void planar420Test() throws IOException {
+		// Three full frames followed by a frame with only its luma plane,
+		// which counts since that is all that is read.
+		byte[] bytes = randomBytes(3 * STRIDE_420 + LUMA, 591);
+		YuvFrameReader reader = new YuvFrameReader(tempFile(bytes), WIDTH, HEIGHT, STRIDE_420);
+		assertFrames(bytes, STRIDE_420, 4, reader);
+		reader.close();
+
+		// A trailing luma plane that is cut short doesn't count.
+		bytes = Arrays.copyOf(bytes, 3 * STRIDE_420 + LUMA - 1);
+		reader = new YuvFrameReader(tempFile(bytes), WIDTH, HEIGHT, STRIDE_420);
+		assertFrames(bytes, STRIDE_420, 3, reader);
+		reader.close();
+	}
+
+	@Test
+	public void seekTest() throws IOException {
+		byte[] bytes = randomBytes(3 * STRIDE_420, 592);
+		YuvFrameReader reader = new YuvFrameReader(tempFile(bytes), WIDTH, HEIGHT, STRIDE_420);
+		Frame frame = new Frame(WIDTH, HEIGHT);
+
+		reader.seek(2);
+		assertTrue(reader.next(frame));
+		assertArrayEquals(luma(bytes, STRIDE_420, 2), frame.getPixels());
+		assertFalse(reader.next(frame));
+
+		// Seeking to the end is allowed and leaves nothing to read.
+		reader.seek(0);
+		reader.seek(3);
+		assertFalse(reader.next(frame));
+
+		int[] bad = { -1, 4 };
+		for (int n : bad) {
+			try {
+				reader.seek(n);
+				fail("Seek to frame " + n);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		try {
+			reader.read(3, frame);
+			fail("Read past last frame");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			reader.read(0, new Frame(WIDTH, HEIGHT + 1));
+			fail("Read into frame of wrong size");
+		} catch (IllegalArgumentException e) {
+		}
+		reader.close();
+	}
+}